@@ -0,0 +1,61 @@
+package heimlich_and_co_benchmarks;
+
+import heimlich_and_co.HeimlichAndCo;
+import heimlich_and_co.actions.HeimlichAndCoAction;
+import heimlich_and_co.actions.HeimlichAndCoDieRollAction;
+import heimlich_and_co.enums.HeimlichAndCoPhase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Creates the game states the benchmarks are run on.
+ */
+final class BenchmarkGames {
+
+    /**
+     * Number of random actions played before the benchmarked game state is reached, s.t. the game is in the middle
+     * of the game (agents and safe moved, cards drawn).
+     */
+    private static final int NUMBER_OF_OPENING_ACTIONS = 20;
+
+    private BenchmarkGames() {
+    }
+
+    /**
+     * Creates a game in the middle of the game where the current player has to move the agents (the phase with the
+     * most possible actions). The die is rolled with custom die rolls chosen by the given seed, s.t. the game state
+     * only depends on the seed (and the random assignment of agents to players).
+     *
+     * @param numberOfPlayers number of players
+     * @param withCards       whether the game is played with cards
+     * @param seed            for choosing the actions
+     * @return the game, it is not over and the current phase is the agent move phase
+     */
+    static HeimlichAndCo createGame(int numberOfPlayers, boolean withCards, long seed) {
+        Random random = new Random(seed);
+        while (true) {
+            HeimlichAndCo game = new HeimlichAndCo(withCards ? "cards" : null, numberOfPlayers);
+            game.setAllowCustomDieRolls(true);
+            for (int i = 0; !game.isGameOver(); i++) {
+                if (i >= NUMBER_OF_OPENING_ACTIONS && game.getCurrentPhase() == HeimlichAndCoPhase.AGENT_MOVE_PHASE) {
+                    return game;
+                }
+                List<HeimlichAndCoAction> possibleActions = new ArrayList<>(game.getPossibleActions());
+                if (game.getCurrentPhase() == HeimlichAndCoPhase.DIE_ROLL_PHASE && possibleActions.size() > 1) {
+                    possibleActions.removeIf(action -> action.equals(HeimlichAndCoDieRollAction.getRandomRollAction()));
+                }
+                game.applyAction(possibleActions.get(random.nextInt(possibleActions.size())));
+            }
+        }
+    }
+
+    /**
+     * @return any possible action of the game, chosen by the given seed
+     */
+    static HeimlichAndCoAction chooseAction(HeimlichAndCo game, long seed) {
+        List<HeimlichAndCoAction> possibleActions = new ArrayList<>(game.getPossibleActions());
+        return possibleActions.get(new Random(seed).nextInt(possibleActions.size()));
+    }
+}
@@ -0,0 +1,49 @@
+package heimlich_and_co_benchmarks;
+
+import heimlich_and_co.HeimlichAndCo;
+import heimlich_and_co.actions.HeimlichAndCoAction;
+import heimlich_and_co_depth_search_agent.AlphaBetaSearch;
+import heimlich_and_co_depth_search_agent.DepthSearchNode;
+import heimlich_and_co_depth_search_agent.GameStateEvaluator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the searches of the depth-search agent to a fixed depth: building and evaluating the complete tree
+ * (DepthSearchNode) and the alpha-beta search (without transposition table, s.t. every invocation does the same work).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DepthSearchBenchmark {
+
+    @Param({"2", "3", "4", "5"})
+    private int numberOfPlayers;
+
+    @Param({"false", "true"})
+    private boolean withCards;
+
+    @Param({"1", "2", "3"})
+    private int depth;
+
+    private HeimlichAndCo game;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        game = BenchmarkGames.createGame(numberOfPlayers, withCards, 42);
+    }
+
+    @Benchmark
+    public HeimlichAndCoAction expandAndEvaluateTree() {
+        DepthSearchNode root = new DepthSearchNode(game, 0);
+        root.expand(depth);
+        root.evaluateTree(new GameStateEvaluator(game.getCurrentPlayer()));
+        return root.getMaxAction();
+    }
+
+    @Benchmark
+    public HeimlichAndCoAction alphaBetaSearch() {
+        return new AlphaBetaSearch(game.getCurrentPlayer(), () -> false).search(game, depth);
+    }
+}
@@ -0,0 +1,69 @@
+package heimlich_and_co_benchmarks;
+
+import heimlich_and_co.HeimlichAndCo;
+import heimlich_and_co.actions.HeimlichAndCoAction;
+import heimlich_and_co_mcts_agent.PlayoutGame;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the operations of the game that the agents use the most: copying a game, getting the possible actions
+ * and applying actions.
+ * <p>
+ * applyAction() modifies the game, therefore it is measured together with copying the game (applyActionOnCopy); the
+ * time of copyConstructor has to be subtracted to get the time of applyAction() alone.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GameBenchmark {
+
+    @Param({"2", "3", "4", "5"})
+    private int numberOfPlayers;
+
+    @Param({"false", "true"})
+    private boolean withCards;
+
+    private HeimlichAndCo game;
+    private HeimlichAndCoAction action;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        game = BenchmarkGames.createGame(numberOfPlayers, withCards, 42);
+        action = BenchmarkGames.chooseAction(game, 42);
+    }
+
+    @Benchmark
+    public HeimlichAndCo copyConstructor() {
+        return new HeimlichAndCo(game);
+    }
+
+    @Benchmark
+    public Set<HeimlichAndCoAction> getPossibleActions() {
+        return game.getPossibleActions();
+    }
+
+    @Benchmark
+    public HeimlichAndCo doAction() {
+        return game.doAction(action);
+    }
+
+    @Benchmark
+    public HeimlichAndCo applyActionOnCopy() {
+        HeimlichAndCo copy = new HeimlichAndCo(game);
+        copy.applyAction(action);
+        return copy;
+    }
+
+    /**
+     * applyAction() as done during playouts, i.e. without validating the action again
+     */
+    @Benchmark
+    public HeimlichAndCo applyActionOnPlayoutGame() {
+        PlayoutGame copy = new PlayoutGame(game);
+        copy.applyAction(action);
+        return copy;
+    }
+}
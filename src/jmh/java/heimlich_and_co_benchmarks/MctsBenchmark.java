@@ -0,0 +1,89 @@
+package heimlich_and_co_benchmarks;
+
+import at.ac.tuwien.ifs.sge.util.pair.Pair;
+import heimlich_and_co.HeimlichAndCo;
+import heimlich_and_co.actions.HeimlichAndCoAction;
+import heimlich_and_co_mcts_agent.MctsNode;
+import heimlich_and_co_mcts_agent.PlayoutEngine;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the four steps of an MCTS iteration of the MCTS agent on a tree that was already grown for some
+ * iterations. The simulation step (playout) is measured in playouts per second.
+ * <p>
+ * expansion creates a new child every time, therefore it is done on a fresh root node, which is created before every
+ * invocation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MctsBenchmark {
+
+    /**
+     * Number of MCTS iterations done on the tree before it is benchmarked.
+     */
+    private static final int NUMBER_OF_ITERATIONS = 50;
+    /**
+     * Termination depth of the playouts, the same as used by the MCTS agent.
+     */
+    private static final int TERMINATION_DEPTH = 64;
+
+    @Param({"2", "3", "4", "5"})
+    private int numberOfPlayers;
+
+    @Param({"false", "true"})
+    private boolean withCards;
+
+    private HeimlichAndCo game;
+    private HeimlichAndCoAction action;
+    private PlayoutEngine playoutEngine;
+    private MctsNode tree;
+    /**
+     * the node expanded last while growing the tree, i.e. a leaf
+     */
+    private MctsNode leaf;
+    private MctsNode freshRoot;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        game = BenchmarkGames.createGame(numberOfPlayers, withCards, 42);
+        action = BenchmarkGames.chooseAction(game, 42);
+        playoutEngine = new PlayoutEngine(game.getCurrentPlayer(), TERMINATION_DEPTH);
+        tree = new MctsNode(game.getCurrentPlayer(), game);
+        for (int i = 0; i < NUMBER_OF_ITERATIONS; i++) {
+            Pair<MctsNode, HeimlichAndCoAction> selectionPair = tree.selection(true);
+            leaf = selectionPair.getA().expansion(selectionPair.getB());
+            leaf.backpropagation(playoutEngine.playout(leaf.getPlayoutGame(), () -> false));
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpFreshRoot() {
+        freshRoot = new MctsNode(game.getCurrentPlayer(), game);
+    }
+
+    @Benchmark
+    public Pair<MctsNode, HeimlichAndCoAction> selection() {
+        return tree.selection(true);
+    }
+
+    @Benchmark
+    public MctsNode expansion() {
+        return freshRoot.expansion(action);
+    }
+
+    @Benchmark
+    public MctsNode backpropagation() {
+        leaf.backpropagation(0);
+        return leaf;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public int playout() {
+        return playoutEngine.playout(tree.getPlayoutGame(), () -> false);
+    }
+}
@@ -0,0 +1,46 @@
+package heimlich_and_co_benchmarks;
+
+import heimlich_and_co_agent_core.PackedGameState;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the operations of PackedGameState on the same game states as GameBenchmark (without cards, as only these
+ * can be packed), s.t. they can be compared with copying the game and applying actions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PackedGameStateBenchmark {
+
+    @Param({"2", "3", "4", "5"})
+    private int numberOfPlayers;
+
+    private PackedGameState state;
+    private final int[] moves = new int[PackedGameState.MAX_MOVES];
+    private int move;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        state = new PackedGameState(BenchmarkGames.createGame(numberOfPlayers, false, 42));
+        int numberOfMoves = state.getPossibleMoves(moves);
+        move = moves[numberOfMoves / 2];
+    }
+
+    @Benchmark
+    public int getPossibleMoves() {
+        return state.getPossibleMoves(moves);
+    }
+
+    /**
+     * makeMove() together with undoMove(), as done by a search for every step
+     */
+    @Benchmark
+    public long makeAndUndoMove() {
+        state.makeMove(move);
+        long packedState = state.getPackedState();
+        state.undoMove();
+        return packedState;
+    }
+}
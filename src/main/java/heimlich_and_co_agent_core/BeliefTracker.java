@@ -0,0 +1,426 @@
+package heimlich_and_co_agent_core;
+
+import at.ac.tuwien.ifs.sge.game.ActionRecord;
+import heimlich_and_co.HeimlichAndCo;
+import heimlich_and_co.HeimlichAndCoBoard;
+import heimlich_and_co.actions.HeimlichAndCoAction;
+import heimlich_and_co.actions.HeimlichAndCoAgentMoveAction;
+import heimlich_and_co.actions.HeimlichAndCoDieRollAction;
+import heimlich_and_co.actions.HeimlichAndCoSafeMoveAction;
+import heimlich_and_co.enums.Agent;
+import heimlich_and_co.enums.HeimlichAndCoPhase;
+
+import java.util.*;
+
+/**
+ * Tracks how likely each other player owns each agent, from the agent moves the players made so far, s.t. the hidden
+ * agents can be guessed from a distribution that fits the observed moves instead of uniformly at random.
+ * <p>
+ * The model is that a player chooses an agent move with a probability proportional to exp(RATIONALITY * utility),
+ * where the utility is the score the player's agent would have if the agents were scored after the move, minus the
+ * highest such score of the other agents. For every observed agent move of another player, the log-likelihood of the
+ * move is added to the weight of each agent the player could own. The likelihood is normalized over all moves that
+ * were possible with the (unknown) die roll, i.e. over at most a few hundred moves.
+ * <p>
+ * update() only replays the action records that were added since the last update, on a board of its own, s.t. every
+ * action is only processed once. The game awards the points (see HeimlichAndCoBoard.awardPoints()) right before the
+ * safe is moved, which the board does the same way. Afterwards, the board is checked against the board of the game and
+ * copied from it if they differ (e.g. as the safe of a disqualified player is moved without an action record). Safe
+ * moves and cards are not used as evidence, as where the safe is moved to and which cards are played hardly depends on
+ * the agent of the player.
+ */
+public class BeliefTracker {
+
+    /**
+     * How strongly players are assumed to prefer moves with a higher utility (per point); 0 means that the moves tell
+     * nothing about the agents. Players that follow the model exactly are recognized with higher values, but the
+     * search agents of this project only follow it loosely, so higher values make the beliefs overconfident for them.
+     */
+    private static final double RATIONALITY = 0.15;
+    /**
+     * Share of the uniform distribution that is mixed into the beliefs when sampling, s.t. no agent is ruled out by a
+     * model that does not fit the actual players.
+     */
+    private static final double UNIFORM_SHARE = 0.1;
+    /**
+     * A sampled assignment of agents is rejected if it is less likely than the most likely assignment by more than this
+     * factor (as log).
+     */
+    private static final double REJECTION_LOG_MARGIN = Math.log(50);
+    /**
+     * Number of samples that are drawn at most, before the last sample is accepted even though it is implausible.
+     */
+    private static final int MAXIMUM_SAMPLES = 32;
+    private static final int ONE_TO_THREE_MAXIMUM = 3;
+
+    private final int playerId;
+    private Agent[] agents;
+    private Agent ownAgent;
+    /**
+     * the log-likelihood of the observed moves of each player, if the player owns the agent (indexed by player and
+     * index of the agent in agents)
+     */
+    private double[][] logWeights;
+    /**
+     * the log-likelihood of the most likely assignment of agents, NaN if it has to be calculated again
+     */
+    private double maximumLogLikelihood = Double.NaN;
+    private HeimlichAndCoBoard board;
+    private int processedRecords;
+    /**
+     * how often the board differed from the board of the game after an update (see update()), for checking the replay
+     */
+    private int resynchronizations;
+
+    /**
+     * @param playerId the player the games are given to, i.e. the player whose agent is known
+     */
+    public BeliefTracker(int playerId) {
+        this.playerId = playerId;
+    }
+
+    /**
+     * Processes the actions of the given game that were not processed yet. If the game is not the continuation of the
+     * previous one (e.g. a new game started), the beliefs are reset.
+     *
+     * @param game as seen by the player, before hidden information is added
+     */
+    public void update(HeimlichAndCo game) {
+        List<ActionRecord<HeimlichAndCoAction>> actionRecords = game.getActionRecords();
+        if (agents == null || actionRecords.size() < processedRecords
+                || game.getPlayersToAgentsMap().get(playerId) != ownAgent) {
+            reset(game);
+        }
+        ListIterator<ActionRecord<HeimlichAndCoAction>> iterator = actionRecords.listIterator(processedRecords);
+        while (iterator.hasNext()) {
+            ActionRecord<HeimlichAndCoAction> actionRecord = iterator.next();
+            HeimlichAndCoAction action = actionRecord.getAction();
+            if (action instanceof HeimlichAndCoDieRollAction) {
+                continue; //does not change the positions, and applying a random die roll would roll the die again
+            }
+            if (action instanceof HeimlichAndCoSafeMoveAction) {
+                awardPendingPoints();
+            }
+            if (action instanceof HeimlichAndCoAgentMoveAction && actionRecord.getPlayer() != playerId
+                    && !((HeimlichAndCoAgentMoveAction) action).isNoMoveAction()) {
+                int[] positionsBefore = getPositions();
+                int[] scoresBefore = getScores();
+                action.applyAction(board);
+                addEvidence(actionRecord.getPlayer(), positionsBefore, scoresBefore, getPositions());
+            } else {
+                action.applyAction(board);
+            }
+        }
+        processedRecords = actionRecords.size();
+        if (game.getCurrentPhase() == HeimlichAndCoPhase.SAFE_MOVE_PHASE) {
+            awardPendingPoints();
+        }
+        if (!matches(game.getBoard())) {
+            board = new HeimlichAndCoBoard(game.getBoard());
+            resynchronizations++;
+        }
+    }
+
+    /**
+     * Awards the points of a scoring that was triggered by the agent moves since the last scoring, as the game does
+     * when it switches to the safe move phase.
+     */
+    private void awardPendingPoints() {
+        if (board.scoringTriggered()) {
+            board.awardPoints();
+        }
+    }
+
+    /**
+     * @return whether the positions, scores and the safe of the board of this equal the ones of the given board
+     */
+    private boolean matches(HeimlichAndCoBoard observedBoard) {
+        return board.getAgentsPositions().equals(observedBoard.getAgentsPositions())
+                && board.getScores().equals(observedBoard.getScores())
+                && board.getSafePosition() == observedBoard.getSafePosition();
+    }
+
+    /**
+     * @return how often the replayed board differed from the board of the game and had to be copied from it, since the
+     * beliefs were reset
+     */
+    int getResynchronizations() {
+        return resynchronizations;
+    }
+
+    private void reset(HeimlichAndCo game) {
+        agents = game.getBoard().getAgents();
+        ownAgent = game.getPlayersToAgentsMap().get(playerId);
+        logWeights = new double[game.getNumberOfPlayers()][agents.length];
+        maximumLogLikelihood = Double.NaN;
+        board = new HeimlichAndCoBoard(agents);
+        processedRecords = 0;
+        resynchronizations = 0;
+    }
+
+    private int[] getPositions() {
+        int[] positions = new int[agents.length];
+        for (int i = 0; i < agents.length; i++) {
+            positions[i] = board.getAgentsPositions().get(agents[i]);
+        }
+        return positions;
+    }
+
+    private int[] getScores() {
+        int[] scores = new int[agents.length];
+        for (int i = 0; i < agents.length; i++) {
+            scores[i] = board.getScores().get(agents[i]);
+        }
+        return scores;
+    }
+
+    /**
+     * Adds the log-likelihood of an agent move of the given player for every agent the player could own.
+     */
+    private void addEvidence(int player, int[] positionsBefore, int[] scores, int[] positionsAfter) {
+        int total = 0;
+        for (int i = 0; i < agents.length; i++) {
+            total += Math.floorMod(positionsAfter[i] - positionsBefore[i], board.getNumberOfFields());
+        }
+        double[] utilities = new double[agents.length];
+        getUtilities(positionsAfter, scores, utilities);
+        //the moves possible with a face are equally likely to be observed for every face the move is possible with
+        double[] likelihoods = new double[agents.length];
+        for (int face : board.getDieFaces()) {
+            if (face == PackedGameState.ONE_TO_THREE_FACE) {
+                if (total <= ONE_TO_THREE_MAXIMUM) {
+                    addInverse(likelihoods, getPartitionFunctions(positionsBefore, scores, 1, ONE_TO_THREE_MAXIMUM));
+                }
+            } else if (face == total) {
+                addInverse(likelihoods, getPartitionFunctions(positionsBefore, scores, total, total));
+            }
+        }
+        for (int i = 0; i < agents.length; i++) {
+            if (agents[i] != ownAgent && likelihoods[i] > 0) {
+                logWeights[player][i] += RATIONALITY * utilities[i] + Math.log(likelihoods[i]);
+            }
+        }
+        maximumLogLikelihood = Double.NaN;
+    }
+
+    private static void addInverse(double[] sums, double[] values) {
+        for (int i = 0; i < sums.length; i++) {
+            sums[i] += 1 / values[i];
+        }
+    }
+
+    /**
+     * Sums exp(RATIONALITY * utility) over all moves that move the agents by minimumTotal to maximumTotal fields in
+     * total, for every agent as the agent of the moving player.
+     */
+    private double[] getPartitionFunctions(int[] positionsBefore, int[] scores, int minimumTotal, int maximumTotal) {
+        double[] partitionFunctions = new double[agents.length];
+        addPartitionFunctions(positionsBefore, scores, 0, minimumTotal, maximumTotal, new int[agents.length],
+                new double[agents.length], partitionFunctions);
+        return partitionFunctions;
+    }
+
+    /**
+     * Enumerates the amounts the agents from the given index on can be moved by (at most a few hundred moves) and adds
+     * the terms of the moves to the partition functions.
+     */
+    private void addPartitionFunctions(int[] positionsBefore, int[] scores, int index, int minimumTotal,
+                                       int maximumTotal, int[] positions, double[] utilities,
+                                       double[] partitionFunctions) {
+        if (index == agents.length) {
+            if (minimumTotal <= 0) {
+                getUtilities(positions, scores, utilities);
+                for (int i = 0; i < agents.length; i++) {
+                    partitionFunctions[i] += Math.exp(RATIONALITY * utilities[i]);
+                }
+            }
+            return;
+        }
+        for (int amount = 0; amount <= maximumTotal; amount++) {
+            positions[index] = (positionsBefore[index] + amount) % board.getNumberOfFields();
+            addPartitionFunctions(positionsBefore, scores, index + 1, minimumTotal - amount, maximumTotal - amount,
+                    positions, utilities, partitionFunctions);
+        }
+    }
+
+    /**
+     * Calculates the utility of the given positions for every agent as the agent of the moving player, i.e. the score
+     * the agent would have if the agents were scored now minus the highest such score of all other agents (like the
+     * evaluation of the depth search agent).
+     */
+    private void getUtilities(int[] positions, int[] scores, double[] utilities) {
+        int highest = Integer.MIN_VALUE;
+        int secondHighest = Integer.MIN_VALUE;
+        for (int i = 0; i < agents.length; i++) {
+            int value = scores[i] + board.getPointsForField(positions[i]);
+            if (value > highest) {
+                secondHighest = highest;
+                highest = value;
+            } else if (value > secondHighest) {
+                secondHighest = value;
+            }
+        }
+        for (int i = 0; i < agents.length; i++) {
+            int value = scores[i] + board.getPointsForField(positions[i]);
+            utilities[i] = value - (value == highest ? secondHighest : highest);
+        }
+    }
+
+    /**
+     * @return the probability that the given player owns the given agent, according to the observed moves
+     */
+    public double getProbability(int player, Agent agent) {
+        if (player == playerId) {
+            return agent == ownAgent ? 1 : 0;
+        }
+        double maximum = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < agents.length; i++) {
+            if (agents[i] != ownAgent) {
+                maximum = Math.max(maximum, logWeights[player][i]);
+            }
+        }
+        double sum = 0;
+        double probability = 0;
+        for (int i = 0; i < agents.length; i++) {
+            if (agents[i] != ownAgent) {
+                double weight = Math.exp(logWeights[player][i] - maximum);
+                sum += weight;
+                probability += agents[i] == agent ? weight : 0;
+            }
+        }
+        return probability / sum;
+    }
+
+    /**
+     * Samples the agents of the other players. The players choose their agents one after the other in a random order,
+     * each from the agents that are left according to its beliefs. Samples that are a lot less likely than the most
+     * likely assignment (see REJECTION_LOG_MARGIN) are rejected, at most MAXIMUM_SAMPLES samples are drawn.
+     *
+     * @param random used for sampling
+     * @return the agent of every player, including the player's own agent
+     */
+    public Map<Integer, Agent> sampleAgents(Random random) {
+        double minimumLogLikelihood = getMinimumPlausibleLogLikelihood();
+        List<Integer> players = new ArrayList<>();
+        for (int i = 0; i < logWeights.length; i++) {
+            if (i != playerId) {
+                players.add(i);
+            }
+        }
+        Map<Integer, Agent> sample = new HashMap<>();
+        for (int i = 0; i < MAXIMUM_SAMPLES; i++) {
+            Collections.shuffle(players, random);
+            boolean[] assigned = new boolean[agents.length];
+            assigned[Arrays.asList(agents).indexOf(ownAgent)] = true;
+            sample.clear();
+            sample.put(playerId, ownAgent);
+            double logLikelihood = 0;
+            for (int player : players) {
+                int agent = sampleAgent(player, assigned, random);
+                assigned[agent] = true;
+                sample.put(player, agents[agent]);
+                logLikelihood += logWeights[player][agent];
+            }
+            if (logLikelihood >= minimumLogLikelihood) {
+                break;
+            }
+        }
+        return sample;
+    }
+
+    /**
+     * Checks whether the given assignment of agents (e.g. of a determinization that was sampled earlier, when there was
+     * less evidence) would still be accepted by sampleAgents(), i.e. it is not a lot less likely than the most likely
+     * assignment.
+     *
+     * @param playersToAgents the agent of every player
+     * @return whether the assignment is plausible according to the observed moves
+     */
+    public boolean isPlausible(Map<Integer, Agent> playersToAgents) {
+        if (playersToAgents.get(playerId) != ownAgent) {
+            return false;
+        }
+        List<Agent> agentList = Arrays.asList(agents);
+        double logLikelihood = 0;
+        for (int player = 0; player < logWeights.length; player++) {
+            if (player == playerId) {
+                continue;
+            }
+            int agent = agentList.indexOf(playersToAgents.get(player));
+            if (agent < 0) {
+                return false;
+            }
+            logLikelihood += logWeights[player][agent];
+        }
+        return logLikelihood >= getMinimumPlausibleLogLikelihood();
+    }
+
+    /**
+     * @return the log-likelihood below which assignments are rejected (see REJECTION_LOG_MARGIN)
+     */
+    private double getMinimumPlausibleLogLikelihood() {
+        if (Double.isNaN(maximumLogLikelihood)) {
+            maximumLogLikelihood = getMaximumLogLikelihood(0, new boolean[agents.length]);
+        }
+        return maximumLogLikelihood - REJECTION_LOG_MARGIN;
+    }
+
+    /**
+     * Samples an agent that is not assigned yet for the player, proportionally to the beliefs mixed with UNIFORM_SHARE
+     * of the uniform distribution.
+     *
+     * @return the index of the agent
+     */
+    private int sampleAgent(int player, boolean[] assigned, Random random) {
+        double maximum = Double.NEGATIVE_INFINITY;
+        int numberOfUnassigned = 0;
+        for (int i = 0; i < agents.length; i++) {
+            if (!assigned[i]) {
+                maximum = Math.max(maximum, logWeights[player][i]);
+                numberOfUnassigned++;
+            }
+        }
+        double[] weights = new double[agents.length];
+        double sum = 0;
+        for (int i = 0; i < agents.length; i++) {
+            if (!assigned[i]) {
+                weights[i] = Math.exp(logWeights[player][i] - maximum);
+                sum += weights[i];
+            }
+        }
+        double value = random.nextDouble();
+        int last = -1;
+        for (int i = 0; i < agents.length; i++) {
+            if (!assigned[i]) {
+                value -= (1 - UNIFORM_SHARE) * weights[i] / sum + UNIFORM_SHARE / numberOfUnassigned;
+                last = i;
+                if (value < 0) {
+                    return i;
+                }
+            }
+        }
+        return last;
+    }
+
+    /**
+     * Finds the log-likelihood of the most likely assignment of the unassigned agents to the players from the given one
+     * on, by trying all assignments (there are at most 6! of them).
+     */
+    private double getMaximumLogLikelihood(int player, boolean[] assigned) {
+        if (player == logWeights.length) {
+            return 0;
+        }
+        if (player == playerId) {
+            return getMaximumLogLikelihood(player + 1, assigned);
+        }
+        double maximum = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < agents.length; i++) {
+            if (!assigned[i] && agents[i] != ownAgent) {
+                assigned[i] = true;
+                maximum = Math.max(maximum, logWeights[player][i] + getMaximumLogLikelihood(player + 1, assigned));
+                assigned[i] = false;
+            }
+        }
+        return maximum;
+    }
+}
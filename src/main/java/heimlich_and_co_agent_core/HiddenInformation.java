@@ -0,0 +1,58 @@
+package heimlich_and_co_agent_core;
+
+import heimlich_and_co.HeimlichAndCo;
+import heimlich_and_co.enums.Agent;
+
+import java.util.*;
+
+/**
+ * Handles the information that the game hides from the players (i.e. which agent belongs to which player and the cards
+ * of the other players), which the agents have to guess for searching.
+ */
+public final class HiddenInformation {
+
+    private HiddenInformation() {
+    }
+
+    /**
+     * Adds information that was removed by the game (i.e. hidden information).
+     * Therefore, adds entries to the map which maps agents to players and entries to the map mapping the cards of players.
+     * The agents are randomly assigned to players. And players are assumed to have no cards.
+     *
+     * @param game     to add information to
+     * @param playerId the player the game was given to, i.e. the player whose information is not hidden
+     * @param random   used for assigning the agents
+     */
+    public static void addInformationToGame(HeimlichAndCo game, int playerId, Random random) {
+        addInformationToGame(game, playerId, random, null);
+    }
+
+    /**
+     * Adds information that was removed by the game (i.e. hidden information), like addInformationToGame() without
+     * beliefs, but the agents are sampled from the given beliefs about the players (see BeliefTracker.sampleAgents()).
+     *
+     * @param game     to add information to
+     * @param playerId the player the game was given to, i.e. the player whose information is not hidden
+     * @param random   used for assigning the agents
+     * @param beliefs  updated with the game (see BeliefTracker.update()); null to assign the agents uniformly at random
+     */
+    public static void addInformationToGame(HeimlichAndCo game, int playerId, Random random, BeliefTracker beliefs) {
+        //we need to determinize the game, i.e. add information that is secret that the game hid from us
+        //here we just guess
+        Map<Integer, Agent> playersToAgentsMap = game.getPlayersToAgentsMap();
+        Map<Integer, Agent> sampledAgents = beliefs != null ? beliefs.sampleAgents(random) : null;
+        List<Agent> unassignedAgents = new LinkedList<>(Arrays.asList(game.getBoard().getAgents()));
+        unassignedAgents.remove(playersToAgentsMap.get(playerId));
+        for (int i = 0; i < game.getNumberOfPlayers(); i++) {
+            if (i == playerId) {
+                continue;
+            }
+            Agent chosenAgent = sampledAgents != null ? sampledAgents.get(i) : unassignedAgents.get(random.nextInt(unassignedAgents.size()));
+            playersToAgentsMap.put(i, chosenAgent); //choose a random agent
+            unassignedAgents.remove(chosenAgent);
+            if (game.isWithCards()) {
+                game.getCards().put(i, new LinkedList<>()); //other players do not get cards for now
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package heimlich_and_co_agent_core;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+
+/**
+ * Appends SearchMetrics as JSON lines (one JSON object per line) to a local file.
+ * <p>
+ * The file is given by the system property FILE_PROPERTY (e.g. -Dheimlich_and_co.metricsFile=metrics.jsonl), if it
+ * is not set nothing is written. All agents of a JVM write to the same file; writes are synchronized, s.t. lines of
+ * agents running in parallel (e.g. in a tournament) are not mixed up.
+ */
+public final class MetricsLog {
+
+    public static final String FILE_PROPERTY = "heimlich_and_co.metricsFile";
+
+    private static final Path FILE = System.getProperty(FILE_PROPERTY) != null ? Paths.get(System.getProperty(FILE_PROPERTY)) : null;
+
+    private MetricsLog() {
+    }
+
+    /**
+     * @return whether metrics are written, i.e. whether the system property is set
+     */
+    public static boolean isEnabled() {
+        return FILE != null;
+    }
+
+    /**
+     * Appends the metrics to the file, if metrics are written.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(SearchMetrics metrics) throws IOException {
+        if (FILE == null) {
+            return;
+        }
+        synchronized (MetricsLog.class) {
+            Files.write(FILE, Collections.singletonList(metrics.toJson()), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package heimlich_and_co_agent_core;
+
+import heimlich_and_co.enums.HeimlichAndCoPhase;
+
+import java.util.function.LongPredicate;
+
+/**
+ * Decides how much of the time left for a move (see AbstractGameAgent.nanosLeft() after setTimers()) is used for
+ * searching, s.t. moves with few options are decided faster and the agent never times out.
+ * <p>
+ * A safety margin is always kept (the larger of SAFETY_MARGIN_FRACTION of the time and MINIMUM_SAFETY_MARGIN_NANOS),
+ * as searches can only be stopped between steps and returning the action takes time as well. The rest is weighted
+ * by the phase of the game and by the number of possible actions: a move with few possible actions (e.g. moving the
+ * safe) gets less time than moving the agents, as more time hardly changes the decision.
+ * <p>
+ * Additionally, a search can be stopped early if its result can no longer change in the remaining time (see
+ * isDecided()).
+ */
+public class MoveTimeManager {
+
+    /**
+     * The share of the time left that is never used for searching.
+     */
+    private static final double SAFETY_MARGIN_FRACTION = 0.1;
+    /**
+     * The time that is never used for searching, if it is more than SAFETY_MARGIN_FRACTION of the time.
+     */
+    private static final long MINIMUM_SAFETY_MARGIN_NANOS = 50_000_000L;
+    /**
+     * Number of possible actions from which on the whole time (after the safety margin) is used. With fewer actions,
+     * the time is scaled logarithmically with the number of actions.
+     */
+    private static final int BRANCHING_FACTOR_FOR_FULL_BUDGET = 64;
+    /**
+     * The minimum share of the time (after the safety margin) that is used, no matter the phase and the number of
+     * possible actions.
+     */
+    private static final double MINIMUM_BUDGET_FRACTION = 0.2;
+    /**
+     * The minimum time between two checks of isDecided(), as a check can be expensive.
+     */
+    private static final long DECIDED_CHECK_INTERVAL_NANOS = 20_000_000L;
+
+    private final long startNanos;
+    private final long budgetNanos;
+    private volatile boolean decided;
+    private volatile long lastDecidedCheckNanos;
+    /**
+     * the elapsed time when the search first had a result (see markFirstResult()), -1 before
+     */
+    private volatile long firstResultNanos = -1;
+
+    /**
+     * @param nanosLeft       the time left for the move (e.g. AbstractGameAgent.nanosLeft() right after setTimers())
+     * @param phase           the current phase of the game
+     * @param branchingFactor the number of possible actions
+     */
+    public MoveTimeManager(long nanosLeft, HeimlichAndCoPhase phase, int branchingFactor) {
+        this.startNanos = System.nanoTime();
+        long safetyMargin = Math.max(MINIMUM_SAFETY_MARGIN_NANOS, (long) (nanosLeft * SAFETY_MARGIN_FRACTION));
+        long usableNanos = Math.max(0, nanosLeft - safetyMargin);
+        double fraction = Math.max(MINIMUM_BUDGET_FRACTION, getPhaseWeight(phase) * getBranchingWeight(branchingFactor));
+        this.budgetNanos = (long) (usableNanos * fraction);
+        this.lastDecidedCheckNanos = startNanos;
+    }
+
+    /**
+     * @return whether the search has to be stopped, because the budget is used up or the result is decided
+     */
+    public boolean shouldStop() {
+        return decided || getElapsedNanos() >= budgetNanos;
+    }
+
+    /**
+     * Whether another iteration of an iterative deepening search should be started. This is only the case if at most
+     * half of the budget is used up, as the next iteration usually takes (a lot) longer than all previous ones.
+     */
+    public boolean shouldStartNextIteration() {
+        return !decided && getElapsedNanos() < budgetNanos / 2;
+    }
+
+    /**
+     * Checks whether the result of a search is decided, i.e. it cannot change with the work that can still be done in
+     * the remaining budget. The remaining work is estimated from the work done so far. If it is decided, shouldStop()
+     * is true from then on.
+     * <p>
+     * The check is only done every DECIDED_CHECK_INTERVAL_NANOS, otherwise the last result is returned. This can be
+     * called by multiple threads at the same time.
+     *
+     * @param workDone             the work (e.g. playouts) done in this move so far
+     * @param decidedWithRemaining tells whether the result is decided if the given amount of work is still done
+     * @return whether the result is decided
+     */
+    public boolean isDecided(long workDone, LongPredicate decidedWithRemaining) {
+        long now = System.nanoTime();
+        if (decided || now - lastDecidedCheckNanos < DECIDED_CHECK_INTERVAL_NANOS) {
+            return decided;
+        }
+        lastDecidedCheckNanos = now;
+        long elapsedNanos = now - startNanos;
+        long remainingNanos = budgetNanos - elapsedNanos;
+        if (workDone <= 0 || remainingNanos <= 0) {
+            return decided;
+        }
+        long remainingWork = (long) Math.ceil((double) workDone / elapsedNanos * remainingNanos);
+        if (decidedWithRemaining.test(remainingWork)) {
+            decided = true;
+        }
+        return decided;
+    }
+
+    /**
+     * Records the elapsed time as time to the first result (e.g. the first completed playout or iteration), if no result
+     * was recorded before. This is cheap to call after every step of a search.
+     */
+    public void markFirstResult() {
+        if (firstResultNanos < 0) {
+            firstResultNanos = getElapsedNanos();
+        }
+    }
+
+    /**
+     * @return the elapsed time when markFirstResult() was first called, -1 if it was not called
+     */
+    public long getFirstResultNanos() {
+        return firstResultNanos;
+    }
+
+    public long getBudgetNanos() {
+        return budgetNanos;
+    }
+
+    public long getElapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    public boolean isDecided() {
+        return decided;
+    }
+
+    /**
+     * @return whether the search ended before its budget was used up, i.e. the result was decided or the search was
+     * stopped for another reason (e.g. no further iteration was started) while there was still time left
+     */
+    public boolean stoppedBeforeBudget() {
+        return decided || getElapsedNanos() < budgetNanos;
+    }
+
+    /**
+     * @return the share of the time used in the given phase, if the number of actions does not matter
+     */
+    private static double getPhaseWeight(HeimlichAndCoPhase phase) {
+        switch (phase) {
+            case AGENT_MOVE_PHASE:
+                return 1;
+            case CARD_PLAY_PHASE:
+            case SAFE_MOVE_PHASE:
+                return 0.6;
+            case DIE_ROLL_PHASE:
+            default:
+                return MINIMUM_BUDGET_FRACTION;
+        }
+    }
+
+    /**
+     * @return the share of the time used for the given number of possible actions, if the phase does not matter
+     */
+    private static double getBranchingWeight(int branchingFactor) {
+        if (branchingFactor >= BRANCHING_FACTOR_FOR_FULL_BUDGET) {
+            return 1;
+        }
+        return Math.log(Math.max(2, branchingFactor)) / Math.log(BRANCHING_FACTOR_FOR_FULL_BUDGET);
+    }
+}
@@ -0,0 +1,185 @@
+package heimlich_and_co_agent_core;
+
+import heimlich_and_co.HeimlichAndCo;
+import heimlich_and_co.actions.HeimlichAndCoAction;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A precomputed table of the best actions in early-game positions, stored in a binary file that is memory-mapped
+ * instead of read, s.t. opening it is cheap and only the pages of the entries that are looked up are loaded.
+ * <p>
+ * The file starts with a header (MAGIC, VERSION, the number of entries and a reserved int), followed by the entries
+ * sorted by key. An entry consists of the key (see getKey()), the PackedGameState move of the best action, the number
+ * of playouts of the search for the action and its win rate. A lookup is a binary search over the entries. Only games
+ * without cards are in the table, as actions are stored as moves of PackedGameState.
+ * <p>
+ * The table of the agents is given by the system property FILE_PROPERTY (e.g.
+ * -Dheimlich_and_co.openingTable=opening_table.bin), the agents open it before their first search (see openDefault()).
+ * Tables are generated by heimlich_and_co_tournament.OpeningTableGenerator. This can be used by multiple threads at
+ * the same time.
+ */
+public final class OpeningTable {
+
+    public static final String FILE_PROPERTY = "heimlich_and_co.openingTable";
+
+    private static final int MAGIC = 0x48434F54;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int ENTRY_BYTES = 20;
+    /**
+     * Multiplied with the number of players and combined with the hash of a game (see getKey())
+     */
+    private static final long PLAYERS_KEY = 0x9E3779B97F4A7C15L;
+
+    /**
+     * The statistics of the best action of a position.
+     */
+    public static class Entry {
+        private final int move;
+        private final int playouts;
+        private final float winRate;
+
+        public Entry(int move, int playouts, float winRate) {
+            this.move = move;
+            this.playouts = playouts;
+            this.winRate = winRate;
+        }
+
+        /**
+         * @return the best action as move of PackedGameState
+         */
+        public int getMove() {
+            return move;
+        }
+
+        public int getPlayouts() {
+            return playouts;
+        }
+
+        public float getWinRate() {
+            return winRate;
+        }
+    }
+
+    private final ByteBuffer entries;
+    private final int size;
+
+    private OpeningTable(ByteBuffer entries, int size) {
+        this.entries = entries;
+        this.size = size;
+    }
+
+    /**
+     * Opens the table given by the system property FILE_PROPERTY.
+     *
+     * @return the table, null if the system property is not set
+     * @throws IOException              if the file cannot be read
+     * @throws IllegalArgumentException if the file is not an opening table of this version
+     */
+    public static OpeningTable openDefault() throws IOException {
+        String file = System.getProperty(FILE_PROPERTY);
+        return file != null ? open(Paths.get(file)) : null;
+    }
+
+    /**
+     * Maps the given table file into memory. The entries are only read from the file when they are looked up.
+     *
+     * @throws IOException              if the file cannot be read
+     * @throws IllegalArgumentException if the file is not an opening table of this version
+     */
+    public static OpeningTable open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IllegalArgumentException("Not an opening table of version " + VERSION + ".");
+            }
+            int size = buffer.getInt(8);
+            if (buffer.capacity() != HEADER_BYTES + (long) size * ENTRY_BYTES) {
+                throw new IllegalArgumentException("The opening table is truncated.");
+            }
+            return new OpeningTable(buffer, size);
+        }
+    }
+
+    /**
+     * Writes a table with the given entries to a file.
+     *
+     * @param entries by key (see getKey())
+     */
+    public static void write(Path file, Map<Long, Entry> entries) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + entries.size() * ENTRY_BYTES);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(entries.size()).putInt(0);
+        for (Map.Entry<Long, Entry> entry : new TreeMap<>(entries).entrySet()) {
+            buffer.putLong(entry.getKey()).putInt(entry.getValue().move).putInt(entry.getValue().playouts).putFloat(entry.getValue().winRate);
+        }
+        Files.write(file, buffer.array());
+    }
+
+    /**
+     * The key of a game is its ZobristHash combined with the number of players, as e.g. the initial positions of 4 and
+     * 5 players are on the same board.
+     *
+     * @param game as seen by the current player (see HeimlichAndCo.getGame()), before hidden information is added
+     * @return the key of the game in the table
+     */
+    public static long getKey(HeimlichAndCo game) {
+        return ZobristHash.hash(game) ^ PLAYERS_KEY * game.getNumberOfPlayers();
+    }
+
+    /**
+     * @param key of a game (see getKey())
+     * @return the entry of the game, null if it is not in the table
+     */
+    public Entry get(long key) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int offset = HEADER_BYTES + middle * ENTRY_BYTES;
+            long middleKey = entries.getLong(offset);
+            if (middleKey < key) {
+                low = middle + 1;
+            } else if (middleKey > key) {
+                high = middle - 1;
+            } else {
+                return new Entry(entries.getInt(offset + 8), entries.getInt(offset + 12), entries.getFloat(offset + 16));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Looks up the best action of the given game.
+     *
+     * @param game as seen by the current player (see HeimlichAndCo.getGame()), before hidden information is added
+     * @return the best action, null if the game is not in the table (or is played with cards)
+     */
+    public HeimlichAndCoAction getBestAction(HeimlichAndCo game) {
+        if (game.isWithCards() || !game.getDisqualifiedPlayers().isEmpty()) {
+            return null;
+        }
+        Entry entry = get(getKey(game));
+        if (entry == null) {
+            return null;
+        }
+        PackedGameState state = new PackedGameState(game);
+        //guards against hash collisions with games in which the move is not possible
+        return state.isPossibleMove(entry.move) ? state.toAction(entry.move) : null;
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,401 @@
+package heimlich_and_co_agent_core;
+
+import heimlich_and_co.HeimlichAndCo;
+import heimlich_and_co.HeimlichAndCoBoard;
+import heimlich_and_co.actions.HeimlichAndCoAction;
+import heimlich_and_co.actions.HeimlichAndCoAgentMoveAction;
+import heimlich_and_co.actions.HeimlichAndCoDieRollAction;
+import heimlich_and_co.actions.HeimlichAndCoSafeMoveAction;
+import heimlich_and_co.enums.Agent;
+import heimlich_and_co.enums.HeimlichAndCoPhase;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * A game state of HeimlichAndCo packed into two longs, on which moves can be made and unmade in place.
+ * <p>
+ * Every step of a search on HeimlichAndCo copies the whole game (the maps of the board, the action records, ...) and
+ * validates the action by computing all possible actions. Here, the agent positions, the safe position, the last die
+ * roll, the phase and the current player are packed into one long and the scores into another one, s.t. making a move
+ * only changes a few bits. Moves are ints (see getPossibleMoves()) and every made move can be unmade again with
+ * undoMove(), as the previous state is kept on a stack.
+ * <p>
+ * Only games without cards are supported: the cards are hidden information and their rules need a lot more state.
+ * Without cards, the current turn player is always the current player and no player can be disqualified, so neither
+ * has to be stored. The game over check and the scoring follow HeimlichAndCo and HeimlichAndCoBoard exactly, which is
+ * checked by heimlich_and_co_tournament.PackedGameStateVerifier.
+ * <p>
+ * Moves are not validated, only moves returned by getPossibleMoves() for the current state may be made. This is not
+ * thread-safe.
+ */
+public class PackedGameState {
+
+    /**
+     * The maximum number of moves getPossibleMoves() can return, i.e. the number of ways to distribute a die roll of 6
+     * among 7 agents.
+     */
+    public static final int MAX_MOVES = 924;
+
+    private static final int NUMBER_OF_FIELDS = 12;
+    private static final int RUINS_FIELD = 11;
+    private static final int RUINS_POINTS = -3;
+    private static final int WINNING_SCORE = 42;
+    /**
+     * The die face (see HeimlichAndCoBoard.getDieFaces()) that lets the player move the agents by 1, 2 or 3 fields in
+     * total.
+     */
+    public static final int ONE_TO_THREE_FACE = 13;
+
+    //layout of the state: the position of every agent (4 bits each, by ordinal), then the safe position, the last die
+    //roll, the phase (ordinal) and the current player
+    private static final int POSITION_BITS = 4;
+    private static final int SAFE_SHIFT = POSITION_BITS * 7;
+    private static final int DIE_ROLL_SHIFT = SAFE_SHIFT + 4;
+    private static final int PHASE_SHIFT = DIE_ROLL_SHIFT + 4;
+    private static final int PLAYER_SHIFT = PHASE_SHIFT + 2;
+    //layout of the scores: the score of every agent (9 bits each, by ordinal) plus SCORE_OFFSET, as scores can be negative
+    private static final int SCORE_BITS = 9;
+    private static final int SCORE_OFFSET = 1 << (SCORE_BITS - 1);
+
+    //layout of a move: the type and the die roll, the amounts every agent is moved (3 bits each, by ordinal) or the new
+    //safe position
+    private static final int MOVE_TYPE_SHIFT = 24;
+    private static final int DIE_ROLL_MOVE = 1 << MOVE_TYPE_SHIFT;
+    private static final int AGENT_MOVE = 2 << MOVE_TYPE_SHIFT;
+    private static final int SAFE_MOVE = 3 << MOVE_TYPE_SHIFT;
+    private static final int MOVE_AMOUNT_BITS = 3;
+
+    private static final HeimlichAndCoPhase[] PHASES = HeimlichAndCoPhase.values();
+    private static final Agent[] AGENTS = Agent.values();
+
+    private final HeimlichAndCo origin;
+    private final int[] dieFaces;
+    private final int numberOfPlayers;
+    private final int numberOfAgents;
+    private long state;
+    private long scores;
+    /**
+     * the made moves and the states and scores before them
+     */
+    private int[] moveStack = new int[64];
+    private long[] stateStack = new long[64];
+    private long[] scoreStack = new long[64];
+    private int depth;
+
+    /**
+     * Packs the state of the given game.
+     *
+     * @param game to pack, must not be played with cards; it is copied and must not be modified afterwards
+     * @throws IllegalArgumentException if the game is played with cards or a player is disqualified
+     */
+    public PackedGameState(HeimlichAndCo game) {
+        if (game.isWithCards()) {
+            throw new IllegalArgumentException("Games with cards cannot be packed.");
+        }
+        if (!game.getDisqualifiedPlayers().isEmpty()) {
+            throw new IllegalArgumentException("Games with disqualified players cannot be packed.");
+        }
+        HeimlichAndCoBoard board = game.getBoard();
+        this.origin = new HeimlichAndCo(game);
+        this.dieFaces = board.getDieFaces().clone();
+        this.numberOfPlayers = game.getNumberOfPlayers();
+        this.numberOfAgents = board.getAgents().length;
+        for (Agent agent : board.getAgents()) {
+            if (agent.ordinal() >= numberOfAgents) {
+                throw new IllegalArgumentException("The agents on the board must be the first agents.");
+            }
+            state |= (long) board.getAgentsPositions().get(agent) << (agent.ordinal() * POSITION_BITS);
+            scores |= (long) (board.getScores().get(agent) + SCORE_OFFSET) << (agent.ordinal() * SCORE_BITS);
+        }
+        state |= (long) board.getSafePosition() << SAFE_SHIFT;
+        state |= (long) board.getLastDieRoll() << DIE_ROLL_SHIFT;
+        state |= (long) game.getCurrentPhase().ordinal() << PHASE_SHIFT;
+        state |= (long) game.getCurrentPlayer() << PLAYER_SHIFT;
+    }
+
+    /**
+     * Creates the HeimlichAndCo game of the current state, by applying the moves made since this was created to a copy
+     * of the packed game. This is meant for the few states that need the full game (e.g. for an evaluation), as it is
+     * about as expensive as the search steps this class saves.
+     *
+     * @return a new game in the current state
+     */
+    public HeimlichAndCo toGame() {
+        HeimlichAndCo game = new HeimlichAndCo(origin);
+        game.setAllowCustomDieRolls(true);
+        for (int i = 0; i < depth; i++) {
+            game.applyAction(toAction(moveStack[i]));
+        }
+        game.setAllowCustomDieRolls(origin.isAllowCustomDieRolls());
+        return game;
+    }
+
+    /**
+     * Writes the possible moves of the current state into the given array. In the die roll phase, these are the faces
+     * of the die, i.e. the outcomes of the chance event.
+     *
+     * @param moves to write the moves to, must have a length of at least MAX_MOVES
+     * @return the number of moves written, 0 if the game is over
+     */
+    public int getPossibleMoves(int[] moves) {
+        if (isGameOver()) {
+            return 0;
+        }
+        switch (getPhase()) {
+            case DIE_ROLL_PHASE:
+                for (int i = 0; i < dieFaces.length; i++) {
+                    moves[i] = DIE_ROLL_MOVE | dieFaces[i];
+                }
+                return dieFaces.length;
+            case AGENT_MOVE_PHASE:
+                int dieRoll = getLastDieRoll();
+                if (dieRoll == ONE_TO_THREE_FACE) {
+                    int count = 0;
+                    for (int total = 1; total <= 3; total++) {
+                        count = addAgentMoves(moves, count, 0, total, AGENT_MOVE);
+                    }
+                    return count;
+                }
+                return addAgentMoves(moves, 0, 0, dieRoll, AGENT_MOVE);
+            case SAFE_MOVE_PHASE:
+                int safePosition = getSafePosition();
+                int count = 0;
+                for (int field = 0; field < NUMBER_OF_FIELDS; field++) {
+                    if (field != safePosition) {
+                        moves[count++] = SAFE_MOVE | field;
+                    }
+                }
+                return count;
+            default:
+                throw new IllegalStateException("The phase " + getPhase() + " is not supported.");
+        }
+    }
+
+    /**
+     * Adds every way to distribute the remaining fields among the agents from the given one on.
+     *
+     * @param move the move with the amounts of the previous agents
+     * @return the new number of moves
+     */
+    private int addAgentMoves(int[] moves, int count, int agent, int remaining, int move) {
+        if (agent == numberOfAgents - 1) {
+            moves[count] = move | remaining << (agent * MOVE_AMOUNT_BITS);
+            return count + 1;
+        }
+        for (int amount = remaining; amount >= 0; amount--) {
+            count = addAgentMoves(moves, count, agent + 1, remaining - amount, move | amount << (agent * MOVE_AMOUNT_BITS));
+        }
+        return count;
+    }
+
+    /**
+     * Makes the given move, like HeimlichAndCo.applyAction() with the corresponding action (see toAction()).
+     *
+     * @param move one of the possible moves of the current state (see getPossibleMoves())
+     */
+    public void makeMove(int move) {
+        if (depth == moveStack.length) {
+            moveStack = Arrays.copyOf(moveStack, depth * 2);
+            stateStack = Arrays.copyOf(stateStack, depth * 2);
+            scoreStack = Arrays.copyOf(scoreStack, depth * 2);
+        }
+        moveStack[depth] = move;
+        stateStack[depth] = state;
+        scoreStack[depth] = scores;
+        depth++;
+        int payload = move & ((1 << MOVE_TYPE_SHIFT) - 1);
+        switch (move & ~((1 << MOVE_TYPE_SHIFT) - 1)) {
+            case DIE_ROLL_MOVE:
+                state = set(state, DIE_ROLL_SHIFT, 4, payload);
+                state = set(state, PHASE_SHIFT, 2, HeimlichAndCoPhase.AGENT_MOVE_PHASE.ordinal());
+                break;
+            case AGENT_MOVE:
+                makeAgentMove(payload);
+                break;
+            case SAFE_MOVE:
+                state = set(state, SAFE_SHIFT, 4, payload);
+                state = set(state, PHASE_SHIFT, 2, HeimlichAndCoPhase.DIE_ROLL_PHASE.ordinal());
+                state = set(state, PLAYER_SHIFT, 3, (getCurrentPlayer() + 1) % numberOfPlayers);
+                break;
+            default:
+                throw new IllegalArgumentException("Invalid move: " + move);
+        }
+    }
+
+    /**
+     * Moves the agents and awards the points if an agent was moved onto the safe (see HeimlichAndCoBoard.moveAgent()
+     * and awardPoints()). As the points are always awarded right after scoring was triggered, no agent can have
+     * triggered it before the move.
+     */
+    private void makeAgentMove(int amounts) {
+        int safePosition = getSafePosition();
+        boolean scoringTriggered = false;
+        for (int agent = 0; agent < numberOfAgents; agent++) {
+            int amount = (amounts >>> (agent * MOVE_AMOUNT_BITS)) & ((1 << MOVE_AMOUNT_BITS) - 1);
+            if (amount > 0) {
+                int position = (getAgentPosition(agent) + amount) % NUMBER_OF_FIELDS;
+                state = set(state, agent * POSITION_BITS, POSITION_BITS, position);
+                scoringTriggered |= position == safePosition;
+            }
+        }
+        if (scoringTriggered) {
+            for (int agent = 0; agent < numberOfAgents; agent++) {
+                int position = getAgentPosition(agent);
+                int points = position == RUINS_FIELD ? RUINS_POINTS : position;
+                scores = set(scores, agent * SCORE_BITS, SCORE_BITS, getScore(agent) + points + SCORE_OFFSET);
+            }
+            state = set(state, PHASE_SHIFT, 2, HeimlichAndCoPhase.SAFE_MOVE_PHASE.ordinal());
+        } else {
+            state = set(state, PHASE_SHIFT, 2, HeimlichAndCoPhase.DIE_ROLL_PHASE.ordinal());
+            state = set(state, PLAYER_SHIFT, 3, (getCurrentPlayer() + 1) % numberOfPlayers);
+        }
+    }
+
+    /**
+     * Unmakes the last move that was made.
+     *
+     * @throws IllegalStateException if no move was made
+     */
+    public void undoMove() {
+        if (depth == 0) {
+            throw new IllegalStateException("No move was made.");
+        }
+        depth--;
+        state = stateStack[depth];
+        scores = scoreStack[depth];
+    }
+
+    /**
+     * @param move a move of this state (see getPossibleMoves())
+     * @return the HeimlichAndCo action of the move; die rolls are custom die rolls (see
+     * HeimlichAndCo.setAllowCustomDieRolls())
+     */
+    public HeimlichAndCoAction toAction(int move) {
+        int payload = move & ((1 << MOVE_TYPE_SHIFT) - 1);
+        switch (move & ~((1 << MOVE_TYPE_SHIFT) - 1)) {
+            case DIE_ROLL_MOVE:
+                return new HeimlichAndCoDieRollAction(payload);
+            case AGENT_MOVE:
+                Map<Agent, Integer> agentsMoves = new EnumMap<>(Agent.class);
+                for (int agent = 0; agent < numberOfAgents; agent++) {
+                    int amount = (payload >>> (agent * MOVE_AMOUNT_BITS)) & ((1 << MOVE_AMOUNT_BITS) - 1);
+                    if (amount > 0) {
+                        agentsMoves.put(AGENTS[agent], amount);
+                    }
+                }
+                return new HeimlichAndCoAgentMoveAction(agentsMoves);
+            case SAFE_MOVE:
+                return new HeimlichAndCoSafeMoveAction(payload);
+            default:
+                throw new IllegalArgumentException("Invalid move: " + move);
+        }
+    }
+
+    /**
+     * Finds the move of a HeimlichAndCo action among the possible moves of the current state, i.e. the inverse of
+     * toAction().
+     *
+     * @param action a possible action of the current state
+     * @return the move of the action, -1 if it is not a possible move
+     */
+    public int toMove(HeimlichAndCoAction action) {
+        int[] moves = new int[MAX_MOVES];
+        int numberOfMoves = getPossibleMoves(moves);
+        for (int i = 0; i < numberOfMoves; i++) {
+            if (action.equals(toAction(moves[i]))) {
+                return moves[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return whether the given move is one of the possible moves of the current state
+     */
+    public boolean isPossibleMove(int move) {
+        int[] moves = new int[MAX_MOVES];
+        int numberOfMoves = getPossibleMoves(moves);
+        for (int i = 0; i < numberOfMoves; i++) {
+            if (moves[i] == move) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long set(long bits, int shift, int length, long value) {
+        long mask = ((1L << length) - 1) << shift;
+        return (bits & ~mask) | (value << shift);
+    }
+
+    private static int get(long bits, int shift, int length) {
+        return (int) ((bits >>> shift) & ((1L << length) - 1));
+    }
+
+    public boolean isGameOver() {
+        for (int agent = 0; agent < numberOfAgents; agent++) {
+            if (getScore(agent) >= WINNING_SCORE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param agent the ordinal of the agent
+     */
+    public int getAgentPosition(int agent) {
+        return get(state, agent * POSITION_BITS, POSITION_BITS);
+    }
+
+    /**
+     * @param agent the ordinal of the agent
+     */
+    public int getScore(int agent) {
+        return get(scores, agent * SCORE_BITS, SCORE_BITS) - SCORE_OFFSET;
+    }
+
+    public int getSafePosition() {
+        return get(state, SAFE_SHIFT, 4);
+    }
+
+    public int getLastDieRoll() {
+        return get(state, DIE_ROLL_SHIFT, 4);
+    }
+
+    public HeimlichAndCoPhase getPhase() {
+        return PHASES[get(state, PHASE_SHIFT, 2)];
+    }
+
+    public int getCurrentPlayer() {
+        return get(state, PLAYER_SHIFT, 3);
+    }
+
+    public int getNumberOfAgents() {
+        return numberOfAgents;
+    }
+
+    /**
+     * @return the number of moves made since this was created (and not unmade)
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return the packed positions, safe position, last die roll, phase and current player; together with
+     * getPackedScores() this identifies the state, e.g. as key of a transposition table
+     */
+    public long getPackedState() {
+        return state;
+    }
+
+    /**
+     * @return the packed scores of the agents
+     */
+    public long getPackedScores() {
+        return scores;
+    }
+}
@@ -0,0 +1,131 @@
+package heimlich_and_co_agent_core;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+/**
+ * Metrics of the search for one move, written as one JSON line by MetricsLog.
+ * <p>
+ * Created at the start of computeNextAction(), filled by the agent during the move and completed by finish(). Values
+ * that an agent does not know are -1 (e.g. playouts of the depth search agent).
+ */
+public class SearchMetrics {
+
+    private final String agent;
+    private final int playerId;
+    private final long startNanos;
+    private final long startGcMillis;
+
+    private int moveNumber = -1;
+    private String phase;
+    private int branchingFactor = -1;
+    private long budgetNanos = -1;
+    private long timeUsedNanos = -1;
+    private long remainingNanos = -1;
+    private long nodes = -1;
+    private long playouts = -1;
+    private double playoutsPerSecond = -1;
+    private int maxDepth = -1;
+    private long memoryEstimateBytes = -1;
+    private long timeToFirstResultNanos = -1;
+    private long gcMillis = -1;
+    /**
+     * whether the search ended before its budget was used up (e.g. because the result was decided)
+     */
+    private boolean stoppedEarly;
+
+    /**
+     * @param agent    name of the agent
+     * @param playerId the player of the agent
+     */
+    public SearchMetrics(String agent, int playerId) {
+        this.agent = agent;
+        this.playerId = playerId;
+        this.startNanos = System.nanoTime();
+        this.startGcMillis = getGcMillis();
+    }
+
+    /**
+     * Sets the time used for the move and the garbage collection time since this was created.
+     *
+     * @param remainingNanos the time that was left when the move was finished (e.g. AbstractGameAgent.nanosLeft())
+     */
+    public void finish(long remainingNanos) {
+        this.timeUsedNanos = System.nanoTime() - startNanos;
+        this.remainingNanos = remainingNanos;
+        this.gcMillis = getGcMillis() - startGcMillis;
+    }
+
+    /**
+     * @return the metrics as JSON object in one line
+     */
+    public String toJson() {
+        return String.format(Locale.ROOT, "{\"agent\":\"%s\",\"player\":%d,\"move\":%d,\"phase\":%s,\"branchingFactor\":%d,"
+                        + "\"budgetMs\":%.3f,\"timeUsedMs\":%.3f,\"remainingMs\":%.3f,\"nodes\":%d,\"playouts\":%d,"
+                        + "\"playoutsPerSecond\":%.1f,\"maxDepth\":%d,\"memoryEstimateBytes\":%d,\"timeToFirstResultMs\":%.3f,"
+                        + "\"gcMs\":%d,\"stoppedEarly\":%b}",
+                agent, playerId, moveNumber, phase == null ? "null" : "\"" + phase + "\"", branchingFactor,
+                toMillis(budgetNanos), toMillis(timeUsedNanos), toMillis(remainingNanos), nodes, playouts,
+                playoutsPerSecond, maxDepth, memoryEstimateBytes, toMillis(timeToFirstResultNanos), gcMillis, stoppedEarly);
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos < 0 ? -1 : nanos / 1e6;
+    }
+
+    /**
+     * @return the accumulated collection time of all garbage collectors of the JVM (i.e. of all agents and threads)
+     */
+    private static long getGcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, bean.getCollectionTime());
+        }
+        return millis;
+    }
+
+    public void setMoveNumber(int moveNumber) {
+        this.moveNumber = moveNumber;
+    }
+
+    public void setPhase(String phase) {
+        this.phase = phase;
+    }
+
+    public void setBranchingFactor(int branchingFactor) {
+        this.branchingFactor = branchingFactor;
+    }
+
+    public void setBudgetNanos(long budgetNanos) {
+        this.budgetNanos = budgetNanos;
+    }
+
+    public void setNodes(long nodes) {
+        this.nodes = nodes;
+    }
+
+    public void setPlayouts(long playouts) {
+        this.playouts = playouts;
+    }
+
+    public void setPlayoutsPerSecond(double playoutsPerSecond) {
+        this.playoutsPerSecond = playoutsPerSecond;
+    }
+
+    public void setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    public void setMemoryEstimateBytes(long memoryEstimateBytes) {
+        this.memoryEstimateBytes = memoryEstimateBytes;
+    }
+
+    public void setTimeToFirstResultNanos(long timeToFirstResultNanos) {
+        this.timeToFirstResultNanos = timeToFirstResultNanos;
+    }
+
+    public void setStoppedEarly(boolean stoppedEarly) {
+        this.stoppedEarly = stoppedEarly;
+    }
+}
@@ -0,0 +1,18 @@
+package heimlich_and_co_agent_core;
+
+/**
+ * Implemented by agents that count the work done by their searches, s.t. it can be reported independently of the
+ * log (e.g. by the tournament runner). The counts are summed over all moves since the agent was created.
+ */
+public interface SearchStatistics {
+
+    /**
+     * @return the number of nodes visited by the searches; 0 if the agent does not search nodes
+     */
+    long getTotalNodeCount();
+
+    /**
+     * @return the number of playouts done by the searches; 0 if the agent does not do playouts
+     */
+    long getTotalPlayouts();
+}
@@ -0,0 +1,142 @@
+package heimlich_and_co_agent_core;
+
+import heimlich_and_co.HeimlichAndCo;
+import heimlich_and_co.HeimlichAndCoBoard;
+import heimlich_and_co.cards.HeimlichAndCoCard;
+import heimlich_and_co.enums.Agent;
+import heimlich_and_co.enums.HeimlichAndCoPhase;
+
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Zobrist-style hashing of HeimlichAndCo game states, used as key for transposition tables.
+ * <p>
+ * Every feature of a state (e.g. "agent PERRY is on field 3" or "the current player is 1") has a fixed random 64-bit
+ * key, and the hash of a state is the XOR of the keys of all its features. The hashed features are the agent
+ * positions, the scores, the safe position, the last die roll, the phase, the current player, the current turn
+ * player, the players skipped in a row during the card phase and the assignment of agents to players. If the game is
+ * played with cards, the cards of each player and the size of the card stack are included as well.
+ * <p>
+ * Two states with the same hash are regarded as equal, no matter by which actions they were reached.
+ */
+public final class ZobristHash {
+
+    /**
+     * Number of keys per agent for the positions, the position is taken modulo this value.
+     */
+    private static final int NUMBER_OF_FIELDS = 12;
+    /**
+     * Number of keys per agent for the scores, the score is taken modulo this value.
+     */
+    private static final int NUMBER_OF_SCORES = 128;
+    /**
+     * Number of keys for small numbers like players, die rolls and card stack sizes, the value is taken modulo this value.
+     */
+    private static final int NUMBER_OF_VALUES = 64;
+    /**
+     * The keys are generated with a fixed seed, s.t. hashes are the same in every run.
+     */
+    private static final long SEED = 0x5DEECE66DL;
+
+    private static final long[][] AGENT_POSITION_KEYS = new long[Agent.values().length][NUMBER_OF_FIELDS];
+    private static final long[][] AGENT_SCORE_KEYS = new long[Agent.values().length][NUMBER_OF_SCORES];
+    private static final long[][] PLAYER_AGENT_KEYS = new long[NUMBER_OF_VALUES][Agent.values().length];
+    private static final long[] SAFE_POSITION_KEYS = new long[NUMBER_OF_FIELDS];
+    private static final long[] DIE_ROLL_KEYS = new long[NUMBER_OF_VALUES];
+    private static final long[] PHASE_KEYS = new long[HeimlichAndCoPhase.values().length];
+    private static final long[] CURRENT_PLAYER_KEYS = new long[NUMBER_OF_VALUES];
+    private static final long[] TURN_PLAYER_KEYS = new long[NUMBER_OF_VALUES];
+    private static final long[] SKIPPED_PLAYERS_KEYS = new long[NUMBER_OF_VALUES];
+    private static final long[] CARD_STACK_SIZE_KEYS = new long[NUMBER_OF_VALUES];
+    private static final long[] CARD_PLAYER_KEYS = new long[NUMBER_OF_VALUES];
+
+    static {
+        SplittableRandom random = new SplittableRandom(SEED);
+        fill(random, AGENT_POSITION_KEYS);
+        fill(random, AGENT_SCORE_KEYS);
+        fill(random, PLAYER_AGENT_KEYS);
+        fill(random, SAFE_POSITION_KEYS);
+        fill(random, DIE_ROLL_KEYS);
+        fill(random, PHASE_KEYS);
+        fill(random, CURRENT_PLAYER_KEYS);
+        fill(random, TURN_PLAYER_KEYS);
+        fill(random, SKIPPED_PLAYERS_KEYS);
+        fill(random, CARD_STACK_SIZE_KEYS);
+        fill(random, CARD_PLAYER_KEYS);
+    }
+
+    private ZobristHash() {
+    }
+
+    /**
+     * Calculates the hash of the given game state.
+     *
+     * @param game to hash
+     * @return 64-bit hash of the state
+     */
+    public static long hash(HeimlichAndCo game) {
+        HeimlichAndCoBoard board = game.getBoard();
+        long hash = 0;
+        for (Map.Entry<Agent, Integer> entry : board.getAgentsPositions().entrySet()) {
+            hash ^= AGENT_POSITION_KEYS[entry.getKey().ordinal()][Math.floorMod(entry.getValue(), NUMBER_OF_FIELDS)];
+        }
+        for (Map.Entry<Agent, Integer> entry : board.getScores().entrySet()) {
+            hash ^= AGENT_SCORE_KEYS[entry.getKey().ordinal()][Math.floorMod(entry.getValue(), NUMBER_OF_SCORES)];
+        }
+        for (Map.Entry<Integer, Agent> entry : game.getPlayersToAgentsMap().entrySet()) {
+            hash ^= PLAYER_AGENT_KEYS[Math.floorMod(entry.getKey(), NUMBER_OF_VALUES)][entry.getValue().ordinal()];
+        }
+        hash ^= SAFE_POSITION_KEYS[Math.floorMod(board.getSafePosition(), NUMBER_OF_FIELDS)];
+        hash ^= DIE_ROLL_KEYS[Math.floorMod(board.getLastDieRoll(), NUMBER_OF_VALUES)];
+        hash ^= PHASE_KEYS[game.getCurrentPhase().ordinal()];
+        hash ^= CURRENT_PLAYER_KEYS[Math.floorMod(game.getCurrentPlayer(), NUMBER_OF_VALUES)];
+        hash ^= TURN_PLAYER_KEYS[Math.floorMod(game.getCurrentTurnPlayer(), NUMBER_OF_VALUES)];
+        if (game.isWithCards()) {
+            hash ^= SKIPPED_PLAYERS_KEYS[Math.floorMod(game.getPlayersSkippedInARowDuringCardPhase(), NUMBER_OF_VALUES)];
+            hash ^= CARD_STACK_SIZE_KEYS[Math.floorMod(game.getCardStack().count(), NUMBER_OF_VALUES)];
+            for (Map.Entry<Integer, List<HeimlichAndCoCard>> entry : game.getCards().entrySet()) {
+                long playerKey = CARD_PLAYER_KEYS[Math.floorMod(entry.getKey(), NUMBER_OF_VALUES)];
+                long handHash = 0;
+                for (HeimlichAndCoCard card : entry.getValue()) {
+                    handHash += mix(playerKey + card.hashCode()); //a sum, s.t. the order of the cards does not matter
+                }
+                hash ^= handHash;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Combines a hash with a depth, s.t. the same state at different depths has different keys.
+     *
+     * @param hash  of a state
+     * @param depth of the state in a search
+     * @return hash for the state at the given depth
+     */
+    public static long withDepth(long hash, int depth) {
+        return hash ^ mix(SEED + depth);
+    }
+
+    /**
+     * Scrambles the bits of a value (finalizer of SplitMix64).
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+
+    private static void fill(SplittableRandom random, long[] keys) {
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = random.nextLong();
+        }
+    }
+
+    private static void fill(SplittableRandom random, long[][] keys) {
+        for (long[] row : keys) {
+            fill(random, row);
+        }
+    }
+}
@@ -0,0 +1,521 @@
+package heimlich_and_co_depth_search_agent;
+
+import heimlich_and_co.HeimlichAndCo;
+import heimlich_and_co.actions.HeimlichAndCoAction;
+import heimlich_and_co.actions.HeimlichAndCoDieRollAction;
+import heimlich_and_co.enums.HeimlichAndCoPhase;
+import heimlich_and_co_agent_core.ZobristHash;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Depth-first alpha-beta search with iterative deepening.
+ * <p>
+ * In contrast to DepthSearchNode, no tree is built. The game states are only kept on the stack while searching.
+ * The search is done with increasing depths until the stop condition is true (or the whole game tree was searched),
+ * and the best action of the last completed depth is returned.
+ * <p>
+ * The maximizing player maximizes the evaluation of GameStateEvaluator, all other players minimize it
+ * (i.e. they are assumed to play against the maximizing player, as in the minimax search of DepthSearchNode).
+ * <p>
+ * Die rolls for which all outcomes are possible actions (i.e. custom die rolls are allowed) are searched as chance
+ * nodes: their value is the expected value of the outcomes, weighted by the probability of the rolled value. Chance
+ * nodes are pruned with Star1 (the bounds of the evaluation limit the expected value of the outcomes that were not
+ * searched yet) and Star2 (probing one action of each outcome first, which gives a bound for the outcome) pruning.
+ * <p>
+ * If a transposition table is given, the values of searched game states are stored in it, s.t. a game state that is
+ * reached again (by a different order of actions, or in the next iteration) does not have to be searched again.
+ * <p>
+ * If a ForkJoinPool is given, the root actions are searched in parallel with the young brothers wait concept: the
+ * first action (the best one of the previous iteration) is searched alone, which gives a good alpha, and then the
+ * other actions are searched in parallel (see searchRootParallel()). An instance itself is not thread-safe.
+ */
+public class AlphaBetaSearch {
+
+    /**
+     * Lower bound of the evaluation, evaluations are clamped to it. Needed for the pruning of chance nodes.
+     */
+    private static final int MINIMUM_EVALUATION = -64 * GameStateEvaluator.SCALE;
+    /**
+     * Upper bound of the evaluation, evaluations are clamped to it. Needed for the pruning of chance nodes.
+     */
+    private static final int MAXIMUM_EVALUATION = 64 * GameStateEvaluator.SCALE;
+    /**
+     * Determines whether chance nodes are probed before searching them (Star2 pruning).
+     * False means that only the bounds of the evaluation are used for pruning chance nodes (Star1 pruning).
+     */
+    private static final boolean USE_STAR2_PROBING = true;
+
+    /**
+     * the playerId of the maximizing player (this should be the id of the AI agent playing)
+     */
+    private final int maximizingPlayer;
+    /**
+     * determines when the search has to be aborted
+     */
+    private final BooleanSupplier stopCondition;
+    /**
+     * evaluates the game states at the end of the search for the maximizing player
+     */
+    private final GameStateEvaluator evaluator;
+    /**
+     * caches the values of searched game states; null if no transposition table is used
+     */
+    private final TranspositionTable transpositionTable;
+    /**
+     * searches the root actions in parallel; null if the search is done on the calling thread only
+     */
+    private final ForkJoinPool pool;
+    /**
+     * Saves how many nodes were visited.
+     * For info/statistics purposes
+     */
+    private int nodeCount;
+    /**
+     * the depth of the last completed iteration
+     */
+    private int completedDepth;
+    /**
+     * the time from the start of search() until the first iteration was completed, -1 if it was not completed
+     */
+    private long firstIterationNanos = -1;
+    /**
+     * the evaluations done by the helper searches of searchRootParallel()
+     */
+    private long helperEvaluationCount;
+    /**
+     * whether the current iteration was aborted because of the stop condition
+     */
+    private boolean aborted;
+    /**
+     * whether a node was evaluated because the depth limit (and not the end of the game) was reached in the current
+     * iteration. If not, a deeper iteration would not change anything.
+     */
+    private boolean depthLimitReached;
+
+    public AlphaBetaSearch(int maximizingPlayer, BooleanSupplier stopCondition) {
+        this(maximizingPlayer, stopCondition, null);
+    }
+
+    public AlphaBetaSearch(int maximizingPlayer, BooleanSupplier stopCondition, TranspositionTable transpositionTable) {
+        this(maximizingPlayer, stopCondition, transpositionTable, null);
+    }
+
+    /**
+     * @param maximizingPlayer   the player the search is done for
+     * @param stopCondition      determines when the search has to be aborted, must be thread-safe if a pool is given
+     * @param transpositionTable the table to use; null if none is used
+     * @param pool               searches the root actions in parallel; null if the search is done on the calling thread
+     */
+    public AlphaBetaSearch(int maximizingPlayer, BooleanSupplier stopCondition, TranspositionTable transpositionTable, ForkJoinPool pool) {
+        this.maximizingPlayer = maximizingPlayer;
+        this.stopCondition = stopCondition;
+        this.evaluator = new GameStateEvaluator(maximizingPlayer);
+        this.transpositionTable = transpositionTable;
+        this.pool = pool;
+    }
+
+    /**
+     * Searches the best action with iterative deepening, i.e. does alpha-beta searches with depth 1, 2, ... until the
+     * stop condition is true, the maximum depth is reached or the whole game tree was searched.
+     * The best action of the previous iteration is searched first, which leads to more cutoffs.
+     *
+     * @param game         current game, the current player has to be the maximizing player
+     * @param maximumDepth the maximum depth that is searched
+     * @return the best action of the last completed iteration (or any possible action if not even depth 1 completed)
+     */
+    public HeimlichAndCoAction search(HeimlichAndCo game, int maximumDepth) {
+        return search(game, maximumDepth, () -> true);
+    }
+
+    /**
+     * Like search(game, maximumDepth), but a new iteration is only started if startNextIteration is true. This allows
+     * to stop before an iteration which would most likely not be completed in the remaining time anyway (see
+     * MoveTimeManager.shouldStartNextIteration()). The first iteration is always started.
+     *
+     * @param game               current game, the current player has to be the maximizing player
+     * @param maximumDepth       the maximum depth that is searched
+     * @param startNextIteration determines whether another iteration is started after an iteration is completed
+     * @return the best action of the last completed iteration (or any possible action if not even depth 1 completed)
+     */
+    public HeimlichAndCoAction search(HeimlichAndCo game, int maximumDepth, BooleanSupplier startNextIteration) {
+        long startNanos = System.nanoTime();
+        List<HeimlichAndCoAction> rootActions = new ArrayList<>(game.getPossibleActions());
+        HeimlichAndCoAction bestAction = rootActions.get(0);
+        for (int depth = 1; depth <= maximumDepth; depth++) {
+            aborted = false;
+            depthLimitReached = false;
+            int bestIndex = searchRoot(game, rootActions, depth);
+            if (aborted) {
+                break;
+            }
+            //removing by index, as equals() of the skip card action cannot compare it to other card actions
+            bestAction = rootActions.remove(bestIndex);
+            rootActions.add(0, bestAction);
+            completedDepth = depth;
+            if (firstIterationNanos < 0) {
+                firstIterationNanos = System.nanoTime() - startNanos;
+            }
+            if (!depthLimitReached || !startNextIteration.getAsBoolean()) {
+                break;
+            }
+        }
+        return bestAction;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public long getEvaluationCount() {
+        return evaluator.getEvaluationCount() + helperEvaluationCount;
+    }
+
+    public int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    public long getFirstIterationNanos() {
+        return firstIterationNanos;
+    }
+
+    /**
+     * Does one alpha-beta search with the given depth from the root.
+     *
+     * @return the index of the best action in rootActions, or -1 if the search was aborted
+     */
+    private int searchRoot(HeimlichAndCo game, List<HeimlichAndCoAction> rootActions, int depth) {
+        nodeCount++;
+        if (pool != null && rootActions.size() > 1) {
+            return searchRootParallel(game, rootActions, depth);
+        }
+        int bestIndex = -1;
+        int alpha = Integer.MIN_VALUE;
+        for (int i = 0; i < rootActions.size(); i++) {
+            int value = alphaBeta(game.doAction(rootActions.get(i)), depth - 1, alpha, Integer.MAX_VALUE);
+            if (aborted) {
+                return -1;
+            }
+            if (bestIndex == -1 || value > alpha) {
+                alpha = value;
+                bestIndex = i;
+            }
+        }
+        return bestIndex;
+    }
+
+    /**
+     * Like searchRoot(), but the root actions except the first one are searched in parallel on the pool.
+     * <p>
+     * The first action is searched on the calling thread. Every other action is searched by its own helper search
+     * (with its own evaluator and node counter), which shares the stop condition and the transposition table. The
+     * helpers share the alpha: each one searches with the best value found so far as alpha, and publishes its value
+     * if it is better. A value that is not better than the alpha it was searched with is only an upper bound (the
+     * search is fail-soft), so only the other values are exact and can be chosen. As in searchRoot(), ties are broken by
+     * the order of the actions: an action before the chosen one whose upper bound equals the best value may have the
+     * same value, so it is searched again with a window that decides this.
+     *
+     * @return the index of the best action in rootActions, or -1 if the search was aborted
+     */
+    private int searchRootParallel(HeimlichAndCo game, List<HeimlichAndCoAction> rootActions, int depth) {
+        int bestValue = alphaBeta(game.doAction(rootActions.get(0)), depth - 1, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        if (aborted) {
+            return -1;
+        }
+        AtomicInteger sharedAlpha = new AtomicInteger(bestValue);
+        int numberOfTasks = rootActions.size() - 1;
+        AlphaBetaSearch[] helpers = new AlphaBetaSearch[numberOfTasks];
+        int[] values = new int[numberOfTasks];
+        int[] startAlphas = new int[numberOfTasks];
+        List<Callable<Void>> tasks = new ArrayList<>(numberOfTasks);
+        for (int i = 0; i < numberOfTasks; i++) {
+            int taskIndex = i;
+            //the children are created here, as the game must not be used by multiple threads
+            HeimlichAndCo child = game.doAction(rootActions.get(i + 1));
+            tasks.add(() -> {
+                AlphaBetaSearch helper = new AlphaBetaSearch(maximizingPlayer, stopCondition, transpositionTable);
+                int startAlpha = sharedAlpha.get();
+                int value = helper.alphaBeta(child, depth - 1, startAlpha, Integer.MAX_VALUE);
+                if (!helper.aborted) {
+                    sharedAlpha.accumulateAndGet(value, Math::max);
+                }
+                helpers[taskIndex] = helper;
+                values[taskIndex] = value;
+                startAlphas[taskIndex] = startAlpha;
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            aborted = true;
+            return -1;
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("A parallel search of a root action failed.", ex.getCause());
+        }
+
+        int bestIndex = 0;
+        for (int i = 0; i < numberOfTasks; i++) {
+            AlphaBetaSearch helper = helpers[i];
+            nodeCount += helper.nodeCount;
+            helperEvaluationCount += helper.getEvaluationCount();
+            aborted |= helper.aborted;
+            depthLimitReached |= helper.depthLimitReached;
+            if (values[i] > startAlphas[i] && values[i] > bestValue) {
+                bestValue = values[i];
+                bestIndex = i + 1;
+            }
+        }
+        if (aborted) {
+            return -1;
+        }
+        //the actions between the first one and the chosen one that may have the best value as well
+        for (int i = 0; i < bestIndex - 1 && bestValue > Integer.MIN_VALUE; i++) {
+            if (values[i] <= startAlphas[i] && values[i] >= bestValue) {
+                int value = alphaBeta(game.doAction(rootActions.get(i + 1)), depth - 1, bestValue - 1, Integer.MAX_VALUE);
+                if (aborted) {
+                    return -1;
+                }
+                if (value >= bestValue) {
+                    return i + 1;
+                }
+            }
+        }
+        return bestIndex;
+    }
+
+    /**
+     * Calculates the minimax value of the given game with alpha-beta pruning.
+     *
+     * @param game  game state to evaluate
+     * @param depth remaining depth
+     * @param alpha the value the maximizing player is already assured of
+     * @param beta  the value the minimizing players are already assured of
+     * @return the value of the game state (if the search was not aborted)
+     */
+    private int alphaBeta(HeimlichAndCo game, int depth, int alpha, int beta) {
+        nodeCount++;
+        if (stopCondition.getAsBoolean()) {
+            aborted = true;
+            return 0;
+        }
+        if (game.isGameOver()) {
+            return evaluate(game);
+        }
+        if (depth == 0) {
+            depthLimitReached = true;
+            return evaluate(game);
+        }
+        if (transpositionTable == null) {
+            return searchChildren(game, depth, alpha, beta);
+        }
+        long hash = ZobristHash.hash(game);
+        TranspositionTable.Entry entry = transpositionTable.get(hash);
+        int alphaOriginal = alpha;
+        int betaOriginal = beta;
+        if (entry != null && entry.getDepth() >= depth) {
+            switch (entry.getBound()) {
+                case EXACT:
+                    //the value is only final if the search of the entry was not cut off by the depth limit
+                    depthLimitReached |= entry.isDepthLimited();
+                    return entry.getValue();
+                case LOWER:
+                    alpha = Math.max(alpha, entry.getValue());
+                    break;
+                case UPPER:
+                    beta = Math.min(beta, entry.getValue());
+                    break;
+            }
+            if (alpha >= beta) {
+                depthLimitReached |= entry.isDepthLimited();
+                return entry.getValue();
+            }
+        }
+        //whether the depth limit is reached is tracked for the subtree of this game state alone, to store it
+        boolean depthLimitReachedBefore = depthLimitReached;
+        depthLimitReached = false;
+        int value = searchChildren(game, depth, alpha, beta);
+        boolean depthLimited = depthLimitReached;
+        depthLimitReached |= depthLimitReachedBefore;
+        if (!aborted) {
+            TranspositionTable.Bound bound;
+            if (value <= alphaOriginal) {
+                bound = TranspositionTable.Bound.UPPER;
+            } else if (value >= betaOriginal) {
+                bound = TranspositionTable.Bound.LOWER;
+            } else {
+                bound = TranspositionTable.Bound.EXACT;
+            }
+            transpositionTable.put(hash, depth, value, bound, depthLimited);
+        }
+        return value;
+    }
+
+    /**
+     * Calculates the minimax value of the given game with alpha-beta pruning by searching all children.
+     * The game must not be over and depth must be at least 1.
+     */
+    private int searchChildren(HeimlichAndCo game, int depth, int alpha, int beta) {
+        Set<HeimlichAndCoAction> possibleActions = game.getPossibleActions();
+        if (game.getCurrentPhase() == HeimlichAndCoPhase.DIE_ROLL_PHASE && possibleActions.size() > 1) {
+            //the random roll would roll the die anew every time it is applied, the custom rolls are all outcomes
+            possibleActions.remove(HeimlichAndCoDieRollAction.getRandomRollAction());
+            return searchChanceNode(game, possibleActions, depth, alpha, beta);
+        }
+        if (game.getCurrentPlayer() == maximizingPlayer) {
+            int value = Integer.MIN_VALUE;
+            for (HeimlichAndCoAction action : possibleActions) {
+                value = Math.max(value, alphaBeta(game.doAction(action), depth - 1, alpha, beta));
+                if (aborted) {
+                    return 0;
+                }
+                alpha = Math.max(alpha, value);
+                if (alpha >= beta) {
+                    break; //beta cutoff
+                }
+            }
+            return value;
+        } else {
+            int value = Integer.MAX_VALUE;
+            for (HeimlichAndCoAction action : possibleActions) {
+                value = Math.min(value, alphaBeta(game.doAction(action), depth - 1, alpha, beta));
+                if (aborted) {
+                    return 0;
+                }
+                beta = Math.min(beta, value);
+                if (alpha >= beta) {
+                    break; //alpha cutoff
+                }
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Calculates the expected value of a chance node (i.e. a die roll with all outcomes as possible actions) with
+     * Star1 and Star2 pruning.
+     * <p>
+     * While searching the outcomes, the expected value is bounded by the values of the outcomes searched so far and the
+     * bounds of the outcomes not searched yet. Each outcome is searched with the window that is needed to prove that
+     * the expected value is outside of (alpha, beta). If it is, the search of the chance node is stopped and the bound
+     * is returned (Star1). The bounds of the outcomes are the bounds of the evaluation, or the bounds found by probing
+     * one action of each outcome (Star2).
+     *
+     * @param game            game in the die roll phase
+     * @param possibleActions the custom die roll actions, one for each outcome
+     * @return the expected value, or a bound of it that is outside of (alpha, beta)
+     */
+    private int searchChanceNode(HeimlichAndCo game, Set<HeimlichAndCoAction> possibleActions, int depth, int alpha, int beta) {
+        int numberOfOutcomes = possibleActions.size();
+        HeimlichAndCo[] outcomes = new HeimlichAndCo[numberOfOutcomes];
+        double[] probabilities = new double[numberOfOutcomes];
+        double[] lowerBounds = new double[numberOfOutcomes];
+        double[] upperBounds = new double[numberOfOutcomes];
+        int index = 0;
+        for (HeimlichAndCoAction action : possibleActions) {
+            outcomes[index] = game.doAction(action);
+            probabilities[index] = DepthSearchNode.getDieRollProbability(game, outcomes[index].getBoard().getLastDieRoll());
+            lowerBounds[index] = MINIMUM_EVALUATION;
+            upperBounds[index] = MAXIMUM_EVALUATION;
+            index++;
+        }
+        //the sums of the weighted bounds of all outcomes that were not searched yet
+        double lowerBoundSum = MINIMUM_EVALUATION;
+        double upperBoundSum = MAXIMUM_EVALUATION;
+
+        if (USE_STAR2_PROBING && depth >= 2) {
+            for (int i = 0; i < numberOfOutcomes; i++) {
+                HeimlichAndCo outcome = outcomes[i];
+                double probability = probabilities[i];
+                if (outcome.isGameOver() || outcome.getCurrentPhase() == HeimlichAndCoPhase.DIE_ROLL_PHASE) {
+                    continue;
+                }
+                //the value of any action is a lower bound for a maximizing node and an upper bound for a minimizing one
+                HeimlichAndCoAction probeAction = outcome.getPossibleActions().iterator().next();
+                if (outcome.getCurrentPlayer() == maximizingPlayer) {
+                    double betaThreshold = (beta - (lowerBoundSum - probability * lowerBounds[i])) / probability;
+                    int probeValue = alphaBeta(outcome.doAction(probeAction), depth - 2, MINIMUM_EVALUATION - 1, childBeta(betaThreshold));
+                    if (aborted) {
+                        return 0;
+                    }
+                    if (probeValue > lowerBounds[i]) {
+                        lowerBoundSum += probability * (probeValue - lowerBounds[i]);
+                        lowerBounds[i] = probeValue;
+                    }
+                    if (lowerBoundSum >= beta) {
+                        return (int) Math.floor(lowerBoundSum);
+                    }
+                } else {
+                    double alphaThreshold = (alpha - (upperBoundSum - probability * upperBounds[i])) / probability;
+                    int probeValue = alphaBeta(outcome.doAction(probeAction), depth - 2, childAlpha(alphaThreshold), MAXIMUM_EVALUATION + 1);
+                    if (aborted) {
+                        return 0;
+                    }
+                    if (probeValue < upperBounds[i]) {
+                        upperBoundSum -= probability * (upperBounds[i] - probeValue);
+                        upperBounds[i] = probeValue;
+                    }
+                    if (upperBoundSum <= alpha) {
+                        return (int) Math.ceil(upperBoundSum);
+                    }
+                }
+            }
+        }
+
+        double expectedValue = 0; //of the outcomes searched so far
+        for (int i = 0; i < numberOfOutcomes; i++) {
+            double probability = probabilities[i];
+            lowerBoundSum -= probability * lowerBounds[i];
+            upperBoundSum -= probability * upperBounds[i];
+            double alphaThreshold = (alpha - expectedValue - upperBoundSum) / probability;
+            double betaThreshold = (beta - expectedValue - lowerBoundSum) / probability;
+            int value = alphaBeta(outcomes[i], depth - 1, childAlpha(alphaThreshold), childBeta(betaThreshold));
+            if (aborted) {
+                return 0;
+            }
+            if (value <= alphaThreshold) {
+                return (int) Math.ceil(expectedValue + probability * value + upperBoundSum); //alpha cutoff
+            }
+            if (value >= betaThreshold) {
+                return (int) Math.floor(expectedValue + probability * value + lowerBoundSum); //beta cutoff
+            }
+            expectedValue += probability * value;
+        }
+        return (int) Math.round(expectedValue);
+    }
+
+    /**
+     * @return the alpha for searching an outcome of a chance node, s.t. failing low means the value is at most the
+     * given threshold
+     */
+    private static int childAlpha(double alphaThreshold) {
+        return (int) Math.max(Math.floor(alphaThreshold), MINIMUM_EVALUATION - 1);
+    }
+
+    /**
+     * @return the beta for searching an outcome of a chance node, s.t. failing high means the value is at least the
+     * given threshold
+     */
+    private static int childBeta(double betaThreshold) {
+        return (int) Math.min(Math.ceil(betaThreshold), MAXIMUM_EVALUATION + 1);
+    }
+
+    /**
+     * Evaluates the game for the maximizing player, clamped to the bounds of the evaluation.
+     */
+    private int evaluate(HeimlichAndCo game) {
+        int value = evaluator.evaluate(game);
+        return Math.max(MINIMUM_EVALUATION, Math.min(MAXIMUM_EVALUATION, value));
+    }
+}
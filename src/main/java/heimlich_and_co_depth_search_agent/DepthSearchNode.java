@@ -2,17 +2,13 @@ package heimlich_and_co_depth_search_agent;
 
 import heimlich_and_co.HeimlichAndCo;
 import heimlich_and_co.actions.HeimlichAndCoAction;
-import heimlich_and_co.enums.Agent;
+import heimlich_and_co.actions.HeimlichAndCoDieRollAction;
+import heimlich_and_co.enums.HeimlichAndCoPhase;
 
 import java.util.*;
 
 public class DepthSearchNode {
 
-    /**
-     * Saves how many nodes were created.
-     * For info/statistics purposes
-     */
-    private static int totalNodeCount;
     /**
      * the current game (state)
      */
@@ -30,66 +26,105 @@ public class DepthSearchNode {
      * the score (in terms of the minimax algorithm) of this node
      */
     private int score;
+    /**
+     * the evaluation of the game state of this node, calculated when it is first needed
+     */
+    private int evaluation;
+    /**
+     * whether evaluation was already calculated
+     */
+    private boolean evaluated;
 
     public DepthSearchNode(HeimlichAndCo game, int depth) {
         this.game = new HeimlichAndCo(game);
         this.depth = depth;
         this.children = new HashMap<>();
-        totalNodeCount++;
-    }
-
-    public static int getTotalNodeCount() {
-        return totalNodeCount;
-    }
-
-    public static void setTotalNodeCount(int totalNodeCount) {
-        DepthSearchNode.totalNodeCount = totalNodeCount;
     }
 
     /**
      * Calculates and sets the score for each node in the tree.
      * Done by calculating the scores from the ground up (i.e. starting with the leaf nodes) until the root is reached.
+     * <p>
+     * The tree is traversed in a loop (not recursively): the nodes are collected in pre-order first, and then scored
+     * in reverse order, which scores all children of a node before the node itself.
      *
-     * @param maximizingPlayer the playerId of the maximizing player (this should be the id of the AI agent playing)
+     * @param evaluator evaluates the leaf nodes for the maximizing player (this should be the AI agent playing)
      */
-    public void evaluateTree(int maximizingPlayer) {
-        if (children.isEmpty()) {
-            this.score = evaluateGameState(maximizingPlayer);
-            return;
+    public void evaluateTree(GameStateEvaluator evaluator) {
+        List<DepthSearchNode> nodes = new ArrayList<>();
+        Deque<DepthSearchNode> stack = new ArrayDeque<>();
+        stack.push(this);
+        while (!stack.isEmpty()) {
+            DepthSearchNode node = stack.pop();
+            nodes.add(node);
+            for (DepthSearchNode child : node.children.values()) {
+                stack.push(child);
+            }
         }
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            nodes.get(i).calculateScore(evaluator);
+        }
+    }
 
-        for (DepthSearchNode node : children.values()) {
-            node.evaluateTree(maximizingPlayer);
+    /**
+     * Calculates the score of this node from the scores of its children (which have to be calculated already), or
+     * from its evaluation if it is a leaf.
+     */
+    private void calculateScore(GameStateEvaluator evaluator) {
+        if (children.isEmpty()) {
+            this.score = getEvaluation(evaluator);
+            return;
         }
 
-        if (this.game.getCurrentPlayer() == maximizingPlayer) {
-            DepthSearchNode maxNode = Collections.max(children.values(), Comparator.comparingInt(node -> evaluateGameState(maximizingPlayer)));
+        if (this.game.getCurrentPhase() == HeimlichAndCoPhase.DIE_ROLL_PHASE && children.size() > 1) {
+            //chance node: the die outcomes are averaged, weighted by their probability
+            double expectedScore = 0;
+            for (DepthSearchNode node : children.values()) {
+                expectedScore += getDieRollProbability(this.game, node.game.getBoard().getLastDieRoll()) * node.score;
+            }
+            this.score = (int) Math.round(expectedScore);
+        } else if (this.game.getCurrentPlayer() == evaluator.getMaximizingPlayer()) {
+            DepthSearchNode maxNode = Collections.max(children.values(), Comparator.comparingInt(node -> node.score));
             this.score = maxNode.score;
         } else {
-            DepthSearchNode minNode = Collections.min(children.values(), Comparator.comparingInt(node -> evaluateGameState(maximizingPlayer)));
+            DepthSearchNode minNode = Collections.min(children.values(), Comparator.comparingInt(node -> node.score));
             this.score = minNode.score;
         }
     }
 
     /**
      * Expands the current node until the termination depth is reached.
-     * Expands the current node by adding all possible child nodes and then calling expand() recursively.
+     * Expands the current node by adding all possible child nodes, and then the child nodes in the same way. This is
+     * done in a loop with an explicit stack of the nodes still to expand (not recursively).
      *
      * @param terminationDepth depth for stopping expansion (for not timing out)
+     * @return the number of nodes that were created (i.e. without this node)
      */
-    public void expand(int terminationDepth) {
-        if (this.depth == terminationDepth) {
-            return;
-        }
+    public int expand(int terminationDepth) {
         if (this.depth > terminationDepth) {
             throw new IllegalStateException("Depth of node is too large.");
         }
-        Set<HeimlichAndCoAction> possibleActions = game.getPossibleActions();
-        for (HeimlichAndCoAction action : possibleActions) {
-            DepthSearchNode newNode = new DepthSearchNode(game.doAction(action), this.depth + 1);
-            this.children.put(action, newNode);
-            newNode.expand(terminationDepth);
+        int createdNodes = 0;
+        Deque<DepthSearchNode> stack = new ArrayDeque<>();
+        stack.push(this);
+        while (!stack.isEmpty()) {
+            DepthSearchNode node = stack.pop();
+            if (node.depth == terminationDepth) {
+                continue;
+            }
+            Set<HeimlichAndCoAction> possibleActions = node.game.getPossibleActions();
+            if (node.game.getCurrentPhase() == HeimlichAndCoPhase.DIE_ROLL_PHASE && possibleActions.size() > 1) {
+                //only the custom rolls (i.e. all outcomes) are expanded, as the random roll is just one of them
+                possibleActions.remove(HeimlichAndCoDieRollAction.getRandomRollAction());
+            }
+            for (HeimlichAndCoAction action : possibleActions) {
+                DepthSearchNode newNode = new DepthSearchNode(node.game.doAction(action), node.depth + 1);
+                node.children.put(action, newNode);
+                stack.push(newNode);
+                createdNodes++;
+            }
         }
+        return createdNodes;
     }
 
     /**
@@ -103,28 +138,35 @@ public class DepthSearchNode {
     }
 
     /**
-     * Evaluates the current game, meaning finding a way to score a game state for a given player.
-     * Returns a high/positive value if the game state is favorable for the maximizing player and a low/negative value
-     * if it is not favorable.
+     * Evaluates the game state of this node. The evaluation is only calculated once and cached afterwards.
      *
-     * @param maximizingPlayer the playerId of the maximizing player (this should be the id of the AI agent playing)
+     * @param evaluator evaluates the game state for the maximizing player
      * @return a score depicting whether the game state is good or bad for the maximizing player
      */
-    private int evaluateGameState(int maximizingPlayer) {
-        Map<Agent, Integer> scores = game.getBoard().getScores();
-        Agent playerAgent = game.getPlayersToAgentsMap().get(maximizingPlayer);
-        int playerScore = scores.get(playerAgent);
+    private int getEvaluation(GameStateEvaluator evaluator) {
+        if (!evaluated) {
+            evaluation = evaluator.evaluate(game);
+            evaluated = true;
+        }
+        return evaluation;
+    }
 
-        //get the agent with the highest score that is not the agent of the given player
-        int maxScore = Integer.MIN_VALUE;
-        for (Map.Entry<Agent, Integer> entry : scores.entrySet()) {
-            if (entry.getKey() == game.getPlayersToAgentsMap().get(maximizingPlayer)) {
-                continue;
+    /**
+     * Calculates the probability of rolling the given value with the die of the game.
+     *
+     * @param game    whose die is rolled
+     * @param dieRoll the rolled value
+     * @return the share of die faces showing the given value
+     */
+    public static double getDieRollProbability(HeimlichAndCo game, int dieRoll) {
+        int[] dieFaces = game.getBoard().getDieFaces();
+        int count = 0;
+        for (int face : dieFaces) {
+            if (face == dieRoll) {
+                count++;
             }
-            maxScore = Integer.max(maxScore, entry.getValue());
         }
-
-        return playerScore - maxScore;
+        return (double) count / dieFaces.length;
     }
 
 }
@@ -0,0 +1,76 @@
+package heimlich_and_co_depth_search_agent;
+
+import heimlich_and_co.HeimlichAndCo;
+import heimlich_and_co.enums.Agent;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Evaluates game states for one player, meaning finding a way to score a game state for the player.
+ * The score is the difference between the score of the agent of the player and the highest score of all other agents,
+ * multiplied by SCALE. The scale keeps the precision of the expected values of chance nodes (which are rounded to int),
+ * s.t. averages over the die outcomes that differ by less than a point still order the actions.
+ * <p>
+ * The scores are copied into an array indexed by the ordinal of the agents (which is reused for all evaluations), s.t.
+ * the score map of the board is only iterated once per evaluation. An evaluator is not thread-safe.
+ */
+public class GameStateEvaluator {
+
+    /**
+     * The evaluation of a difference of one point between the agents
+     */
+    public static final int SCALE = 1000;
+
+    /**
+     * the playerId of the maximizing player (this should be the id of the AI agent playing)
+     */
+    private final int maximizingPlayer;
+    /**
+     * the scores of the agents, indexed by the ordinal of the agents; Integer.MIN_VALUE for agents not in the game
+     */
+    private final int[] agentScores = new int[Agent.values().length];
+    /**
+     * Saves how many evaluations were done.
+     * For info/statistics purposes
+     */
+    private long evaluationCount;
+
+    public GameStateEvaluator(int maximizingPlayer) {
+        this.maximizingPlayer = maximizingPlayer;
+    }
+
+    /**
+     * Evaluates the given game.
+     * Returns a high/positive value if the game state is favorable for the maximizing player and a low/negative value
+     * if it is not favorable.
+     *
+     * @param game to evaluate
+     * @return a score depicting whether the game state is good or bad for the maximizing player
+     */
+    public int evaluate(HeimlichAndCo game) {
+        evaluationCount++;
+        Arrays.fill(agentScores, Integer.MIN_VALUE);
+        for (Map.Entry<Agent, Integer> entry : game.getBoard().getScores().entrySet()) {
+            agentScores[entry.getKey().ordinal()] = entry.getValue();
+        }
+        int playerAgent = game.getPlayersToAgentsMap().get(maximizingPlayer).ordinal();
+
+        //get the agent with the highest score that is not the agent of the given player
+        int maxScore = Integer.MIN_VALUE;
+        for (int agent = 0; agent < agentScores.length; agent++) {
+            if (agent != playerAgent && agentScores[agent] > maxScore) {
+                maxScore = agentScores[agent];
+            }
+        }
+        return (agentScores[playerAgent] - maxScore) * SCALE;
+    }
+
+    public int getMaximizingPlayer() {
+        return maximizingPlayer;
+    }
+
+    public long getEvaluationCount() {
+        return evaluationCount;
+    }
+}
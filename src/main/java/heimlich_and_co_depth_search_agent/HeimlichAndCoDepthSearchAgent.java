@@ -6,18 +6,104 @@ import at.ac.tuwien.ifs.sge.agent.GameAgent;
 import at.ac.tuwien.ifs.sge.engine.Logger;
 import heimlich_and_co.HeimlichAndCo;
 import heimlich_and_co.actions.HeimlichAndCoAction;
-import heimlich_and_co.enums.Agent;
+import heimlich_and_co_agent_core.BeliefTracker;
+import heimlich_and_co_agent_core.HiddenInformation;
+import heimlich_and_co_agent_core.MetricsLog;
+import heimlich_and_co_agent_core.MoveTimeManager;
+import heimlich_and_co_agent_core.OpeningTable;
+import heimlich_and_co_agent_core.SearchMetrics;
+import heimlich_and_co_agent_core.SearchStatistics;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 
-public class HeimlichAndCoDepthSearchAgent extends AbstractGameAgent<HeimlichAndCo, HeimlichAndCoAction> implements GameAgent<HeimlichAndCo, HeimlichAndCoAction> {
+public class HeimlichAndCoDepthSearchAgent extends AbstractGameAgent<HeimlichAndCo, HeimlichAndCoAction> implements GameAgent<HeimlichAndCo, HeimlichAndCoAction>, SearchStatistics {
 
     /**
      * Determines the depth the tree will be expanded to during the expand() method.
+     * Only used if USE_ITERATIVE_DEEPENING is false.
      */
     private static final int TERMINATION_DEPTH = 3;
 
+    /**
+     * Determines how the search is done.
+     * <p>
+     * True means that a depth-first alpha-beta search with iterative deepening is done (see AlphaBetaSearch), which
+     * searches as deep as possible within the time limit, without building a tree.
+     * <p>
+     * False means that the complete tree is built to TERMINATION_DEPTH and evaluated with minimax afterwards.
+     */
+    private static final boolean USE_ITERATIVE_DEEPENING = true;
+
+    /**
+     * Determines the maximum depth for the iterative deepening search.
+     */
+    private static final int MAXIMUM_DEPTH = 64;
+
+    /**
+     * Determines whether die rolls are searched as chance nodes.
+     * True means that all outcomes of a die roll are searched and averaged, weighted by their probability.
+     * False means that the die is rolled randomly during the search, i.e. only one random outcome is searched.
+     */
+    private static final boolean SIMULATE_ALL_DIE_OUTCOMES = true;
+
+    /**
+     * Determines whether the iterative deepening search uses a transposition table, which caches the values of
+     * searched game states (across iterations and moves).
+     */
+    private static final boolean USE_TRANSPOSITION_TABLE = true;
+
+    /**
+     * The transposition table has 2^TRANSPOSITION_TABLE_SIZE_LOG2 entries.
+     */
+    private static final int TRANSPOSITION_TABLE_SIZE_LOG2 = 20;
+
+    /**
+     * Determines how many threads the iterative deepening search uses. With more than one thread, the root actions are
+     * searched in parallel on a ForkJoinPool (see AlphaBetaSearch), otherwise the search runs on the calling thread.
+     */
+    private static final int NUMBER_OF_THREADS = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Determines whether the agents of the other players are guessed from the moves they made so far (see
+     * BeliefTracker) instead of uniformly at random.
+     */
+    private static final boolean USE_BELIEFS = true;
+
+    /**
+     * Determines whether the action is taken from the opening table (see OpeningTable) without searching, if the game
+     * is in the table. The table is only used if the system property OpeningTable.FILE_PROPERTY is set.
+     */
+    private static final boolean USE_OPENING_TABLE = true;
+
+    /**
+     * The opening table, opened in the first move; null if there is none
+     */
+    private OpeningTable openingTable;
+    private boolean openingTableOpened;
+
+    /**
+     * The beliefs about the agents of the other players, created in the first move; null if USE_BELIEFS is false
+     */
+    private BeliefTracker beliefs;
+
+    /**
+     * Created when it is first needed and kept for the following moves
+     */
+    private TranspositionTable transpositionTable;
+
+    /**
+     * Runs the parallel search, created when it is first needed and shut down in tearDown() or destroy().
+     */
+    private ForkJoinPool pool;
+
+    /**
+     * The nodes visited while computing actions in all moves so far
+     */
+    private long totalNodeCount;
+
     public HeimlichAndCoDepthSearchAgent(Logger logger) {
         super(logger);
     }
@@ -31,22 +117,67 @@ public class HeimlichAndCoDepthSearchAgent extends AbstractGameAgent<HeimlichAnd
         if (possibleActions.size() == 1) {
             return game.getPossibleActions().iterator().next();
         }
+        HeimlichAndCoAction openingAction = getOpeningAction(game);
+        if (openingAction != null) {
+            return openingAction;
+        }
 
+        MoveTimeManager timeManager = new MoveTimeManager(nanosLeft(), game.getCurrentPhase(), possibleActions.size());
+        log.deb("Time budget for this move: " + timeManager.getBudgetNanos() / 1_000_000 + "ms\n");
+        SearchMetrics metrics = new SearchMetrics("depth", this.playerId);
+        metrics.setMoveNumber(game.getActionRecords().size());
+        metrics.setPhase(game.getCurrentPhase().name());
+        metrics.setBranchingFactor(possibleActions.size());
+        metrics.setBudgetNanos(timeManager.getBudgetNanos());
         try {
             log.deb("Adding information to game\n");
-            addInformationToGame(game);
+            HiddenInformation.addInformationToGame(game, this.playerId, random, updateBeliefs(game));
+            if (SIMULATE_ALL_DIE_OUTCOMES) {
+                game.setAllowCustomDieRolls(true);
+            }
+            if (USE_ITERATIVE_DEEPENING) {
+                log.deb("Doing alpha-beta search with iterative deepening\n");
+                if (USE_TRANSPOSITION_TABLE && transpositionTable == null) {
+                    transpositionTable = new TranspositionTable(TRANSPOSITION_TABLE_SIZE_LOG2);
+                }
+                if (transpositionTable != null) {
+                    transpositionTable.newSearch();
+                }
+                ForkJoinPool pool = NUMBER_OF_THREADS > 1 ? getPool() : null;
+                AlphaBetaSearch search = new AlphaBetaSearch(this.playerId, () -> timeManager.shouldStop() || shouldStopComputation(), transpositionTable, pool);
+                HeimlichAndCoAction action = search.search(game, MAXIMUM_DEPTH, timeManager::shouldStartNextIteration);
+                totalNodeCount += search.getNodeCount();
+                metrics.setNodes(search.getNodeCount());
+                metrics.setMaxDepth(search.getCompletedDepth());
+                metrics.setTimeToFirstResultNanos(search.getFirstIterationNanos());
+                metrics.setStoppedEarly(timeManager.stoppedBeforeBudget());
+                log.inf("Completed search to depth " + search.getCompletedDepth() + ", visited " + search.getNodeCount() + " total nodes, "
+                        + search.getEvaluationCount() + " evaluations.\n");
+                if (transpositionTable != null) {
+                    log.inf("Transposition table hits: " + transpositionTable.getHits() + ", stores: " + transpositionTable.getStores() + "\n");
+                    metrics.setMemoryEstimateBytes(transpositionTable.getMemoryEstimateBytes());
+                }
+                return action;
+            }
             log.deb("Creating and expanding tree\n");
-            DepthSearchNode.setTotalNodeCount(0);
             DepthSearchNode root = new DepthSearchNode(game, 0);
-            root.expand(TERMINATION_DEPTH);
+            int nodeCount = 1 + root.expand(TERMINATION_DEPTH);
+            totalNodeCount += nodeCount;
             log.deb("Evaluating tree\n");
-            root.evaluateTree(this.playerId);
+            GameStateEvaluator evaluator = new GameStateEvaluator(this.playerId);
+            root.evaluateTree(evaluator);
             log.deb("Getting max action\n");
-            log.inf("Generated tree with " + DepthSearchNode.getTotalNodeCount() + " total nodes.\n");
+            log.inf("Generated tree with " + nodeCount + " total nodes, " + evaluator.getEvaluationCount() + " evaluations.\n");
+            metrics.setNodes(nodeCount);
+            metrics.setMaxDepth(TERMINATION_DEPTH);
+            metrics.setTimeToFirstResultNanos(timeManager.getElapsedNanos());
             return root.getMaxAction();
         } catch (Exception ex) {
             log.err(ex);
             log.err("An error occurred while calculating the best action. Playing a random action.");
+        } finally {
+            metrics.finish(nanosLeft());
+            writeMetrics(metrics);
         }
 
         //If an exception is encountered, we play a random action s.t. we do not automatically lose the game
@@ -54,30 +185,94 @@ public class HeimlichAndCoDepthSearchAgent extends AbstractGameAgent<HeimlichAnd
         return actions[super.random.nextInt(actions.length)];
     }
 
+    @Override
+    public void tearDown() {
+        shutdownPool();
+        transpositionTable = null;
+    }
+
+    @Override
+    public void destroy() {
+        shutdownPool();
+    }
+
+    private ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(NUMBER_OF_THREADS);
+        }
+        return pool;
+    }
+
+    private void shutdownPool() {
+        if (pool != null) {
+            pool.shutdownNow();
+            pool = null;
+        }
+    }
+
     /**
-     * Adds information that was removed by the game (i.e. hidden information).
-     * Therefore, adds entries to the map which maps agents to players and entries to the map mapping the cards of players.
-     * The agents are randomly assigned to players. And players are assumed to have no cards.
+     * Updates the beliefs about the agents of the other players with the actions that happened since the last move.
      *
-     * @param game
-     */
-    private void addInformationToGame(HeimlichAndCo game) {
-        Map<Integer, Agent> playersToAgentsMap = game.getPlayersToAgentsMap();
-        List<Agent> unassignedAgents = Arrays.asList(game.getBoard().getAgents());
-        unassignedAgents = new LinkedList<>(unassignedAgents);
-        unassignedAgents.remove(playersToAgentsMap.get(this.playerId));
-        for (int i = 0; i < game.getNumberOfPlayers(); i++) {
-            if (i == this.playerId) {
-                continue;
-            }
-            Agent chosenAgent = unassignedAgents.get(random.nextInt(unassignedAgents.size()));
-            playersToAgentsMap.put(i, chosenAgent);
-            unassignedAgents.remove(chosenAgent);
-            if (game.isWithCards()) {
-                game.getCards().put(i, new LinkedList<>()); //other players do not get cards
+     * @param game as seen by this agent, before hidden information is added
+     * @return the updated beliefs, null if USE_BELIEFS is false
+     */
+    private BeliefTracker updateBeliefs(HeimlichAndCo game) {
+        if (!USE_BELIEFS) {
+            return null;
+        }
+        if (beliefs == null) {
+            beliefs = new BeliefTracker(this.playerId);
+        }
+        beliefs.update(game);
+        return beliefs;
+    }
+
+    /**
+     * @return the action of the game in the opening table, null if the game is not in the table or there is no table
+     */
+    private HeimlichAndCoAction getOpeningAction(HeimlichAndCo game) {
+        if (!USE_OPENING_TABLE) {
+            return null;
+        }
+        if (!openingTableOpened) {
+            openingTableOpened = true;
+            try {
+                openingTable = OpeningTable.openDefault();
+            } catch (IOException | IllegalArgumentException ex) {
+                log.err("Could not open the opening table: " + ex.getMessage() + "\n");
             }
         }
+        if (openingTable == null) {
+            return null;
+        }
+        HeimlichAndCoAction action = openingTable.getBestAction(game);
+        if (action != null) {
+            log.inf("Took the action from the opening table\n");
+        }
+        return action;
     }
 
+    /**
+     * Writes the metrics of a move to the metrics file, if one is configured (see MetricsLog).
+     */
+    private void writeMetrics(SearchMetrics metrics) {
+        if (!MetricsLog.isEnabled()) {
+            return;
+        }
+        try {
+            MetricsLog.write(metrics);
+        } catch (IOException ex) {
+            log.err("Could not write the search metrics: " + ex.getMessage() + "\n");
+        }
+    }
 
+    @Override
+    public long getTotalNodeCount() {
+        return totalNodeCount;
+    }
+
+    @Override
+    public long getTotalPlayouts() {
+        return 0;
+    }
 }
@@ -0,0 +1,165 @@
+package heimlich_and_co_depth_search_agent;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-size transposition table for the alpha-beta search. Stores the searched value of a game state (identified by
+ * its Zobrist hash), the depth it was searched to, whether the value is exact or only a bound and whether the search
+ * was cut off by the depth limit (or only reached the ends of the game).
+ * <p>
+ * Each hash maps to exactly one slot. An entry in a slot is replaced if it was stored during an earlier search, or if
+ * the new entry was searched at least as deep (depth-preferred replacement).
+ * <p>
+ * This can be used by multiple threads at the same time (e.g. by the parallel root search of AlphaBetaSearch):
+ * entries are immutable, and a slot is replaced by a single write. Concurrent stores to the same slot may overwrite
+ * each other, which only loses an entry.
+ */
+public class TranspositionTable {
+
+    /**
+     * Estimated size of an Entry object on the heap (object header, fields and padding), used for getMemoryEstimateBytes()
+     */
+    private static final int ESTIMATED_BYTES_PER_ENTRY = 40;
+    /**
+     * Estimated size of a slot of the entries array (a reference)
+     */
+    private static final int ESTIMATED_BYTES_PER_SLOT = 8;
+
+    public enum Bound {
+        /**
+         * the value is the exact minimax value
+         */
+        EXACT,
+        /**
+         * the search failed high, the minimax value is at least the value
+         */
+        LOWER,
+        /**
+         * the search failed low, the minimax value is at most the value
+         */
+        UPPER
+    }
+
+    /**
+     * An entry of the table, entries are never modified.
+     */
+    public static class Entry {
+        private final long hash;
+        private final int depth;
+        private final int value;
+        private final Bound bound;
+        private final boolean depthLimited;
+        private final int generation;
+
+        private Entry(long hash, int depth, int value, Bound bound, boolean depthLimited, int generation) {
+            this.hash = hash;
+            this.depth = depth;
+            this.value = value;
+            this.bound = bound;
+            this.depthLimited = depthLimited;
+            this.generation = generation;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        public int getValue() {
+            return value;
+        }
+
+        public Bound getBound() {
+            return bound;
+        }
+
+        /**
+         * @return whether the depth limit was reached in the search of the value, i.e. a deeper search could change it
+         */
+        public boolean isDepthLimited() {
+            return depthLimited;
+        }
+    }
+
+    private final Entry[] entries;
+    private final int mask;
+    /**
+     * incremented with every new search, s.t. old entries are replaced first
+     */
+    private volatile int generation;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+    /**
+     * number of slots that contain an entry
+     */
+    private final LongAdder occupiedSlots = new LongAdder();
+
+    /**
+     * @param sizeLog2 the table has 2^sizeLog2 slots
+     */
+    public TranspositionTable(int sizeLog2) {
+        this.entries = new Entry[1 << sizeLog2];
+        this.mask = entries.length - 1;
+    }
+
+    /**
+     * Marks all entries that are in the table as old, s.t. they are replaced first. Also resets the statistics.
+     */
+    public void newSearch() {
+        generation++;
+        hits.reset();
+        stores.reset();
+    }
+
+    /**
+     * @param hash of the game state
+     * @return the entry of the game state, or null if there is none
+     */
+    public Entry get(long hash) {
+        Entry entry = entries[index(hash)];
+        if (entry != null && entry.hash == hash) {
+            hits.increment();
+            return entry;
+        }
+        return null;
+    }
+
+    /**
+     * Stores the value of a game state, if the replacement policy allows it.
+     *
+     * @param hash  of the game state
+     * @param depth the remaining depth the game state was searched to
+     * @param value the searched value
+     * @param bound        whether the value is exact or a bound
+     * @param depthLimited whether the depth limit was reached in the search of the value
+     */
+    public void put(long hash, int depth, int value, Bound bound, boolean depthLimited) {
+        int index = index(hash);
+        Entry entry = entries[index];
+        if (entry == null) {
+            occupiedSlots.increment();
+        }
+        if (entry == null || entry.generation != generation || entry.hash == hash || depth >= entry.depth) {
+            entries[index] = new Entry(hash, depth, value, bound, depthLimited, generation);
+            stores.increment();
+        }
+    }
+
+    public int getHits() {
+        return hits.intValue();
+    }
+
+    public int getStores() {
+        return stores.intValue();
+    }
+
+    /**
+     * @return an estimate of the heap memory used by the table (the slots and the entries in them)
+     */
+    public long getMemoryEstimateBytes() {
+        return (long) entries.length * ESTIMATED_BYTES_PER_SLOT + occupiedSlots.sum() * ESTIMATED_BYTES_PER_ENTRY;
+    }
+
+    private int index(long hash) {
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
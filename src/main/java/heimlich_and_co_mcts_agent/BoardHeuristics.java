@@ -0,0 +1,56 @@
+package heimlich_and_co_mcts_agent;
+
+import heimlich_and_co.HeimlichAndCoBoard;
+import heimlich_and_co.actions.HeimlichAndCoAction;
+import heimlich_and_co.enums.Agent;
+
+import java.util.Map;
+
+/**
+ * Cheap ratings of boards and actions for an agent, used for ordering actions (progressive widening), by the heuristic
+ * playout policies and for evaluating playouts that were cut off.
+ */
+final class BoardHeuristics {
+
+    private BoardHeuristics() {
+    }
+
+    /**
+     * Rates a board for the given agent. Every agent is rated with its score plus the points of the building it
+     * currently stands on (the points it would get from the next scoring), the result is the rating of the given agent
+     * minus the highest rating of all other agents.
+     *
+     * @return the rating; positive if the agent is ahead, negative if it is behind
+     */
+    static int rateBoard(HeimlichAndCoBoard board, Agent agent) {
+        Map<Agent, Integer> positions = board.getAgentsPositions();
+        int agentRating = 0;
+        int maxOtherRating = Integer.MIN_VALUE;
+        for (Map.Entry<Agent, Integer> entry : board.getScores().entrySet()) {
+            int rating = entry.getValue() + board.getPointsForField(positions.get(entry.getKey()));
+            if (entry.getKey() == agent) {
+                agentRating = rating;
+            } else {
+                maxOtherRating = Math.max(maxOtherRating, rating);
+            }
+        }
+        return agentRating - maxOtherRating;
+    }
+
+    /**
+     * Applies the action to a copy of the board (which is a lot cheaper than copying the game), including the scoring
+     * if the action triggers it.
+     *
+     * @param board  is not modified
+     * @param action to apply, has to be valid
+     * @return the board after the action
+     */
+    static HeimlichAndCoBoard applyToCopy(HeimlichAndCoBoard board, HeimlichAndCoAction action) {
+        HeimlichAndCoBoard copy = new HeimlichAndCoBoard(board);
+        action.applyAction(copy);
+        if (copy.scoringTriggered()) {
+            copy.awardPoints();
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,395 @@
+package heimlich_and_co_mcts_agent;
+
+import heimlich_and_co.HeimlichAndCo;
+import heimlich_and_co.actions.HeimlichAndCoAction;
+import heimlich_and_co.actions.HeimlichAndCoDieRollAction;
+import heimlich_and_co.enums.HeimlichAndCoPhase;
+
+import java.util.*;
+
+/**
+ * MCTS tree that stores its nodes in primitive parallel arrays (a growable node pool) instead of one object per node.
+ * <p>
+ * A node is identified by its index in the arrays, the root node has index 0. When a node is expanded, a child is
+ * created for every possible action at once, s.t. the children of a node occupy the index range
+ * [firstChild, firstChild + childCount). Game states are not stored in the nodes, but rebuilt on demand by replaying
+ * the actions leading to a node from the root game.
+ * <p>
+ * All accesses to the arrays are done while holding the lock of the tree, s.t. multiple threads can work on the same
+ * tree (tree parallelization). Rebuilding game states and playouts are done without holding the lock.
+ */
+public class CompactMctsTree {
+
+    /**
+     * This constant balances between exploration and exploitation.
+     * The usually recommended value for this is square root of 2, but performance may be improved by changing it.
+     */
+    private static final double C = Math.sqrt(2);
+
+    /**
+     * Number of nodes the arrays can hold initially. The arrays grow by doubling their capacity when they are full.
+     */
+    private static final int INITIAL_CAPACITY = 1 << 12;
+
+    /**
+     * Bytes needed by one node in the arrays: six ints, two booleans and one (compressed) reference to the action.
+     * The action objects themselves are not included.
+     */
+    private static final int BYTES_PER_NODE = 6 * Integer.BYTES + 2 + 4;
+
+    /**
+     * marks a node whose children have not been created yet
+     */
+    private static final int NOT_EXPANDED = -1;
+
+    /**
+     * the game state of the root node, never modified
+     */
+    private final HeimlichAndCo rootGame;
+    /**
+     * the player for which the tree is build. I.e. the player for which the best action should be chosen in the end.
+     */
+    private final int playerId;
+    /**
+     * Whether for die rolls all outcomes are added as children (a random one is selected during selection), or only
+     * one randomly chosen outcome (which is then the only outcome considered in the tree).
+     * <p>
+     * In both cases custom die rolls are used, as a random roll would be rolled anew whenever a game state is rebuilt.
+     */
+    private final boolean simulateAllDieOutcomes;
+
+    private int nodeCount;
+    private int[] wins;
+    private int[] playouts;
+    /**
+     * iterations that currently pass through a node, but have not been backpropagated yet (tree parallelization)
+     */
+    private int[] virtualLosses;
+    private int[] parent;
+    /**
+     * index of the first child of a node, or NOT_EXPANDED
+     */
+    private int[] firstChild;
+    private int[] childCount;
+    /**
+     * whether it is a die roll node, where a random child is selected instead of using UCT
+     */
+    private boolean[] chanceNode;
+    /**
+     * whether the player for which the tree is build chooses the action in a node
+     */
+    private boolean[] maximizingNode;
+    /**
+     * the action leading from the parent to a node; null for the root node
+     */
+    private HeimlichAndCoAction[] action;
+
+    public CompactMctsTree(HeimlichAndCo rootGame, int playerId, boolean simulateAllDieOutcomes) {
+        this.rootGame = new HeimlichAndCo(rootGame);
+        this.rootGame.setAllowCustomDieRolls(true);
+        this.playerId = playerId;
+        this.simulateAllDieOutcomes = simulateAllDieOutcomes;
+        this.wins = new int[INITIAL_CAPACITY];
+        this.playouts = new int[INITIAL_CAPACITY];
+        this.virtualLosses = new int[INITIAL_CAPACITY];
+        this.parent = new int[INITIAL_CAPACITY];
+        this.firstChild = new int[INITIAL_CAPACITY];
+        this.childCount = new int[INITIAL_CAPACITY];
+        this.chanceNode = new boolean[INITIAL_CAPACITY];
+        this.maximizingNode = new boolean[INITIAL_CAPACITY];
+        this.action = new HeimlichAndCoAction[INITIAL_CAPACITY];
+        this.parent[0] = -1;
+        this.firstChild[0] = NOT_EXPANDED;
+        this.nodeCount = 1;
+    }
+
+    /**
+     * Selects a node with UCT strategy, starting from the root. The selection goes down the tree as long as the
+     * current node is expanded. Unvisited children are selected before any child is selected twice.
+     * <p>
+     * If addVirtualLoss is true, a virtual loss is added to every node that is visited (including the root).
+     *
+     * @param addVirtualLoss whether virtual losses should be added (tree parallelization)
+     * @param random         used for breaking ties and selecting die roll outcomes
+     * @return the index of the selected node
+     */
+    public synchronized int selection(boolean addVirtualLoss, Random random) {
+        int node = 0;
+        if (addVirtualLoss) {
+            virtualLosses[node]++;
+        }
+        while (firstChild[node] != NOT_EXPANDED && childCount[node] > 0) {
+            node = selectChild(node, random);
+            if (addVirtualLoss) {
+                virtualLosses[node]++;
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Rebuilds the game state of a node by replaying the actions leading to it from the root game.
+     * As the actions were taken from the possible actions during expansion, they are not validated again.
+     *
+     * @param node index of the node
+     * @return a new game in the state of the node
+     */
+    public PlayoutGame getGame(int node) {
+        List<HeimlichAndCoAction> actions = getActionsFromRoot(node);
+        PlayoutGame game = new PlayoutGame(rootGame);
+        for (HeimlichAndCoAction actionToApply : actions) {
+            game.applyAction(actionToApply);
+        }
+        return game;
+    }
+
+    /**
+     * Expands the given node, if it was already visited before. I.e. creates a child for every possible action in the
+     * given game (which has to be in the state of the node), chooses one of the unvisited children and applies its
+     * action to the game.
+     * <p>
+     * If the node was not visited before (and is not the root) or is terminal, the node itself is returned and the
+     * game is not modified.
+     *
+     * @param node           index of the node selected during selection
+     * @param game           game state of the node, is modified in place
+     * @param addVirtualLoss whether a virtual loss should be added to the chosen child
+     * @param random         used for choosing the child
+     * @return index of the node from where the playout should be done
+     */
+    public int expansion(int node, HeimlichAndCo game, boolean addVirtualLoss, Random random) {
+        if (node != 0 && isUnvisited(node)) {
+            return node;
+        }
+        if (isUnexpanded(node)) {
+            boolean chance = game.getCurrentPhase() == HeimlichAndCoPhase.DIE_ROLL_PHASE;
+            Set<HeimlichAndCoAction> possibleActions = game.getPossibleActions();
+            if (chance) {
+                possibleActions.remove(HeimlichAndCoDieRollAction.getRandomRollAction());
+                if (!simulateAllDieOutcomes) {
+                    HeimlichAndCoAction[] outcomes = possibleActions.toArray(new HeimlichAndCoAction[0]);
+                    possibleActions = Collections.singleton(outcomes[random.nextInt(outcomes.length)]);
+                }
+            }
+            addChildren(node, possibleActions, chance, game.getCurrentPlayer() == playerId);
+        }
+        int child;
+        HeimlichAndCoAction childAction;
+        synchronized (this) {
+            if (childCount[node] == 0) {
+                return node;
+            }
+            child = chooseUnvisitedChild(node, random);
+            if (addVirtualLoss) {
+                virtualLosses[child]++;
+            }
+            childAction = action[child];
+        }
+        game.applyAction(childAction);
+        return child;
+    }
+
+    /**
+     * Does backpropagation starting from the given node.
+     * Therefore, always increases playouts and increases wins depending on win.
+     * <p>
+     * If removeVirtualLoss is true, one virtual loss is removed from each node on the way to the root. This has to be
+     * used iff the virtual losses were added during selection and expansion.
+     *
+     * @param node              index of the node the playout was done from
+     * @param win               indicating whether the game was won or not (1 on win, 0 on loss).
+     * @param removeVirtualLoss whether a virtual loss should be removed from every node on the path
+     */
+    public synchronized void backpropagation(int node, int win, boolean removeVirtualLoss) {
+        if (win != 0 && win != 1) {
+            throw new IllegalArgumentException("Win must be either 1 or 0");
+        }
+        while (node != -1) {
+            playouts[node]++;
+            wins[node] += win;
+            if (removeVirtualLoss) {
+                virtualLosses[node]--;
+            }
+            node = parent[node];
+        }
+    }
+
+    /**
+     * Selects the best action to take in the root node.
+     * This means taking the best action according to Q(s,a).
+     *
+     * @param random used for breaking ties
+     * @return the action with the best expected result.
+     */
+    public synchronized HeimlichAndCoAction getBestAction(Random random) {
+        List<HeimlichAndCoAction> bestActions = new ArrayList<>();
+        double bestQsa = -1;
+        for (int child = firstChild[0]; child >= 0 && child < firstChild[0] + childCount[0]; child++) {
+            if (playouts[child] == 0) {
+                continue;
+            }
+            double qSA = ((double) wins[child]) / playouts[child];
+            if (qSA > bestQsa) {
+                bestQsa = qSA;
+                bestActions.clear();
+            }
+            if (qSA == bestQsa) {
+                bestActions.add(action[child]);
+            }
+        }
+        if (bestActions.isEmpty()) {
+            throw new IllegalStateException("Could not find best child, because no child was played out.");
+        }
+        return bestActions.get(random.nextInt(bestActions.size()));
+    }
+
+    /**
+     * @return wins and playouts (in this order) of every child of the root node by action (e.g. for merging the results
+     * of multiple trees)
+     */
+    public synchronized Map<HeimlichAndCoAction, int[]> getRootChildStatistics() {
+        Map<HeimlichAndCoAction, int[]> statistics = new HashMap<>();
+        for (int child = firstChild[0]; child >= 0 && child < firstChild[0] + childCount[0]; child++) {
+            statistics.put(action[child], new int[]{wins[child], playouts[child]});
+        }
+        return statistics;
+    }
+
+    public synchronized int getPlayouts() {
+        return playouts[0];
+    }
+
+    public synchronized int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @return bytes allocated for the arrays of the node pool (including unused capacity, excluding action objects)
+     */
+    public synchronized long getAllocatedBytes() {
+        return ((long) action.length) * BYTES_PER_NODE;
+    }
+
+    /**
+     * @return allocated bytes divided by the number of nodes
+     */
+    public synchronized double getBytesPerNode() {
+        return ((double) getAllocatedBytes()) / nodeCount;
+    }
+
+    private synchronized List<HeimlichAndCoAction> getActionsFromRoot(int node) {
+        LinkedList<HeimlichAndCoAction> actions = new LinkedList<>();
+        while (node > 0) {
+            actions.addFirst(action[node]);
+            node = parent[node];
+        }
+        return actions;
+    }
+
+    private synchronized boolean isUnvisited(int node) {
+        return playouts[node] == 0;
+    }
+
+    private synchronized boolean isUnexpanded(int node) {
+        return firstChild[node] == NOT_EXPANDED;
+    }
+
+    /**
+     * Creates the children of a node (if no other thread did it in the meantime).
+     */
+    private synchronized void addChildren(int node, Set<HeimlichAndCoAction> possibleActions, boolean chance, boolean maximizing) {
+        if (firstChild[node] != NOT_EXPANDED) {
+            return;
+        }
+        ensureCapacity(nodeCount + possibleActions.size());
+        chanceNode[node] = chance;
+        maximizingNode[node] = maximizing;
+        firstChild[node] = nodeCount;
+        childCount[node] = possibleActions.size();
+        for (HeimlichAndCoAction possibleAction : possibleActions) {
+            parent[nodeCount] = node;
+            firstChild[nodeCount] = NOT_EXPANDED;
+            action[nodeCount] = possibleAction;
+            nodeCount++;
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= action.length) {
+            return;
+        }
+        int newCapacity = action.length;
+        while (newCapacity < capacity) {
+            newCapacity *= 2;
+        }
+        wins = Arrays.copyOf(wins, newCapacity);
+        playouts = Arrays.copyOf(playouts, newCapacity);
+        virtualLosses = Arrays.copyOf(virtualLosses, newCapacity);
+        parent = Arrays.copyOf(parent, newCapacity);
+        firstChild = Arrays.copyOf(firstChild, newCapacity);
+        childCount = Arrays.copyOf(childCount, newCapacity);
+        chanceNode = Arrays.copyOf(chanceNode, newCapacity);
+        maximizingNode = Arrays.copyOf(maximizingNode, newCapacity);
+        action = Arrays.copyOf(action, newCapacity);
+    }
+
+    /**
+     * Chooses a random child of the node that was not visited yet (and is not visited by another thread). If there is
+     * none, a random child is chosen.
+     */
+    private int chooseUnvisitedChild(int node, Random random) {
+        int first = firstChild[node];
+        int count = childCount[node];
+        int unvisited = 0;
+        int chosen = first + random.nextInt(count);
+        for (int child = first; child < first + count; child++) {
+            if (playouts[child] + virtualLosses[child] == 0 && random.nextInt(++unvisited) == 0) {
+                chosen = child; //reservoir sampling, s.t. each unvisited child is chosen with the same probability
+            }
+        }
+        return chosen;
+    }
+
+    /**
+     * Selects a child of an expanded node. In die roll nodes a random child is selected, otherwise unvisited children
+     * are selected first and then the child with the maximum UCT value (ties are broken randomly).
+     * <p>
+     * Virtual losses are counted as playouts that were lost for the player choosing the action.
+     */
+    private int selectChild(int node, Random random) {
+        int first = firstChild[node];
+        int count = childCount[node];
+        if (chanceNode[node]) {
+            return first + random.nextInt(count);
+        }
+        double nS = playouts[node] + virtualLosses[node];
+        double bestUct = Double.NEGATIVE_INFINITY;
+        int bestChild = first;
+        int ties = 0;
+        for (int child = first; child < first + count; child++) {
+            int childVirtualLosses = virtualLosses[child];
+            int childPlayouts = playouts[child] + childVirtualLosses;
+            double uct;
+            if (childPlayouts == 0) {
+                uct = Double.MAX_VALUE;
+            } else {
+                double qSA;
+                if (maximizingNode[node]) {
+                    qSA = ((double) wins[child]) / childPlayouts;
+                } else {
+                    //the other players do not want 'our' player to win, and their virtual losses are wins for 'our' player
+                    qSA = ((double) (childPlayouts - wins[child] - childVirtualLosses)) / childPlayouts;
+                }
+                uct = qSA + C * Math.sqrt(Math.log(nS) / childPlayouts);
+            }
+            if (uct > bestUct) {
+                bestUct = uct;
+                bestChild = child;
+                ties = 1;
+            } else if (uct == bestUct && random.nextInt(++ties) == 0) {
+                bestChild = child;
+            }
+        }
+        return bestChild;
+    }
+}
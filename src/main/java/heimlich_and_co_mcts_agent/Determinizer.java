@@ -0,0 +1,180 @@
+package heimlich_and_co_mcts_agent;
+
+import at.ac.tuwien.ifs.sge.game.ActionRecord;
+import heimlich_and_co.HeimlichAndCo;
+import heimlich_and_co.HeimlichAndCoBoard;
+import heimlich_and_co.actions.HeimlichAndCoAction;
+import heimlich_and_co.actions.HeimlichAndCoAgentMoveAction;
+import heimlich_and_co.actions.HeimlichAndCoCardAction;
+import heimlich_and_co.actions.HeimlichAndCoDieRollAction;
+import heimlich_and_co.cards.HeimlichAndCoCard;
+import heimlich_and_co.enums.Agent;
+import heimlich_and_co.factories.HeimlichAndCoCardStackFactory;
+import heimlich_and_co.util.CardStack;
+import heimlich_and_co_agent_core.BeliefTracker;
+
+import java.util.*;
+
+/**
+ * Creates determinizations of a game that was observed by a player, i.e. fills in the information that the game hid
+ * from that player (the agents of the other players and the cards of the other players).
+ * <p>
+ * Everything that only depends on the observed game (the agents that could belong to other players, the cards that
+ * were not seen yet and the estimated number of cards of each player) is computed once in the constructor, s.t.
+ * creating a new determinization (e.g. for every MCTS iteration) is cheap.
+ */
+public class Determinizer {
+
+    /**
+     * Number of cards each player gets at the start of the game.
+     */
+    private static final int INITIAL_NUMBER_OF_CARDS = 2;
+    /**
+     * A player only draws a card if they have fewer cards than this.
+     */
+    private static final int MAXIMUM_NUMBER_OF_CARDS = 4;
+
+    private final HeimlichAndCo observedGame;
+    private final int playerId;
+    /**
+     * All agents that could belong to one of the other players
+     */
+    private final List<Agent> unassignedAgents;
+    /**
+     * Cards that were neither seen in the hand of the observing player nor played by any player. The cards of the other
+     * players and the cards on the card stack are drawn from these.
+     */
+    private final List<HeimlichAndCoCard> unseenCards;
+    /**
+     * Estimated number of cards of each player, computed by replaying the action records.
+     */
+    private final Map<Integer, Integer> estimatedNumberOfCards;
+    /**
+     * The beliefs the agents of the other players are sampled from, null to assign them uniformly at random
+     */
+    private final BeliefTracker beliefs;
+
+    public Determinizer(HeimlichAndCo observedGame, int playerId) {
+        this(observedGame, playerId, null);
+    }
+
+    /**
+     * @param beliefs updated with the observed game (see BeliefTracker.update()); null to assign the agents of the other
+     *                players uniformly at random
+     */
+    public Determinizer(HeimlichAndCo observedGame, int playerId, BeliefTracker beliefs) {
+        this.observedGame = new HeimlichAndCo(observedGame, false);
+        this.playerId = playerId;
+        this.beliefs = beliefs;
+        this.unassignedAgents = new ArrayList<>(Arrays.asList(observedGame.getBoard().getAgents()));
+        this.unassignedAgents.remove(observedGame.getPlayersToAgentsMap().get(playerId));
+        if (observedGame.isWithCards()) {
+            this.unseenCards = getUnseenCards(observedGame, playerId);
+            this.estimatedNumberOfCards = estimateNumberOfCards(observedGame);
+        } else {
+            this.unseenCards = Collections.emptyList();
+            this.estimatedNumberOfCards = Collections.emptyMap();
+        }
+    }
+
+    /**
+     * Creates a new determinization of the observed game. The agents of the other players are assigned randomly (from
+     * the beliefs, if there are any). If
+     * the game is played with cards, the other players get random unseen cards (as many as they are estimated to have)
+     * and the card stack is made up of the remaining unseen cards.
+     *
+     * The determinization does not validate applied actions, s.t. it can be played out in place.
+     *
+     * @param random used for all random decisions
+     * @return a new game in which no information is hidden
+     */
+    public PlayoutGame determinize(Random random) {
+        PlayoutGame game = new PlayoutGame(observedGame);
+        Map<Integer, Agent> playersToAgentsMap = game.getPlayersToAgentsMap();
+        if (beliefs != null) {
+            playersToAgentsMap.putAll(beliefs.sampleAgents(random));
+        } else {
+            List<Agent> agents = new ArrayList<>(unassignedAgents);
+            Collections.shuffle(agents, random);
+            int agentIndex = 0;
+            for (int i = 0; i < game.getNumberOfPlayers(); i++) {
+                if (i == this.playerId) {
+                    continue;
+                }
+                playersToAgentsMap.put(i, agents.get(agentIndex++));
+            }
+        }
+        if (game.isWithCards()) {
+            List<HeimlichAndCoCard> cards = new ArrayList<>(unseenCards);
+            Collections.shuffle(cards, random);
+            int cardIndex = 0;
+            for (int i = 0; i < game.getNumberOfPlayers(); i++) {
+                if (i == this.playerId) {
+                    continue;
+                }
+                List<HeimlichAndCoCard> hand = new LinkedList<>();
+                int numberOfCards = estimatedNumberOfCards.getOrDefault(i, 0);
+                for (int j = 0; j < numberOfCards && cardIndex < cards.size(); j++) {
+                    hand.add(cards.get(cardIndex++).deepCopy());
+                }
+                game.getCards().put(i, hand);
+            }
+            int stackSize = Math.min(observedGame.getCardStack().count(), cards.size() - cardIndex);
+            List<HeimlichAndCoCard> stack = new ArrayList<>(stackSize);
+            for (int j = 0; j < stackSize; j++) {
+                stack.add(cards.get(cardIndex++).deepCopy());
+            }
+            game.setCardStack(new CardStack<>(stack));
+        }
+        return game;
+    }
+
+    /**
+     * Gets all cards of a complete card stack, except the ones the given player holds and the ones that were already
+     * played.
+     */
+    private static List<HeimlichAndCoCard> getUnseenCards(HeimlichAndCo game, int playerId) {
+        List<HeimlichAndCoCard> cards = new ArrayList<>(HeimlichAndCoCardStackFactory.newInstance().getCards());
+        for (HeimlichAndCoCard card : game.getCards().get(playerId)) {
+            cards.remove(card);
+        }
+        for (ActionRecord<HeimlichAndCoAction> actionRecord : game.getActionRecords()) {
+            if (actionRecord.getAction() instanceof HeimlichAndCoCardAction) {
+                ((HeimlichAndCoCardAction) actionRecord.getAction()).removePlayedCardFromList(cards);
+            }
+        }
+        return cards;
+    }
+
+    /**
+     * Estimates how many cards each player holds by replaying the action records on a new board.
+     * Every player starts with two cards, draws a card when moving an agent into the ruins (or when not moving at all)
+     * while holding less than four cards and loses a card when playing it.
+     * It is not considered that the card stack might have been empty when a card should have been drawn.
+     */
+    private static Map<Integer, Integer> estimateNumberOfCards(HeimlichAndCo game) {
+        Map<Integer, Integer> numberOfCards = new HashMap<>();
+        for (int i = 0; i < game.getNumberOfPlayers(); i++) {
+            numberOfCards.put(i, INITIAL_NUMBER_OF_CARDS);
+        }
+        HeimlichAndCoBoard board = new HeimlichAndCoBoard(game.getBoard().getAgents());
+        for (ActionRecord<HeimlichAndCoAction> actionRecord : game.getActionRecords()) {
+            HeimlichAndCoAction action = actionRecord.getAction();
+            int player = actionRecord.getPlayer();
+            if (action instanceof HeimlichAndCoDieRollAction) {
+                continue; //does not change the positions, and applying a random die roll would roll the die again
+            }
+            if (action instanceof HeimlichAndCoAgentMoveAction) {
+                HeimlichAndCoAgentMoveAction agentMoveAction = (HeimlichAndCoAgentMoveAction) action;
+                boolean drawsCard = agentMoveAction.isNoMoveAction() || agentMoveAction.movesAgentsIntoRuins(board);
+                if (drawsCard && numberOfCards.get(player) < MAXIMUM_NUMBER_OF_CARDS) {
+                    numberOfCards.merge(player, 1, Integer::sum);
+                }
+            } else if (action instanceof HeimlichAndCoCardAction && !((HeimlichAndCoCardAction) action).isSkipCardAction()) {
+                numberOfCards.merge(player, -1, Integer::sum);
+            }
+            action.applyAction(board);
+        }
+        return numberOfCards;
+    }
+}
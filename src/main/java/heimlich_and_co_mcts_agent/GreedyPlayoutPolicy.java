@@ -0,0 +1,84 @@
+package heimlich_and_co_mcts_agent;
+
+import heimlich_and_co.HeimlichAndCo;
+import heimlich_and_co.HeimlichAndCoBoard;
+import heimlich_and_co.actions.HeimlichAndCoAction;
+import heimlich_and_co.enums.Agent;
+import heimlich_and_co.enums.HeimlichAndCoPhase;
+
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Chooses actions epsilon-greedily with respect to a cheap heuristic for the agent of the current player.
+ * <p>
+ * With probability epsilon (and for die rolls, or if the agent of the current player is not known) a uniformly random
+ * action is chosen. Otherwise, up to sampleSize random actions are applied to copies of the board (see
+ * BoardHeuristics.applyToCopy()), and the one with the highest rating is chosen. Only a sample is rated, as rating
+ * every possible action in every step would make a playout many times slower.
+ * <p>
+ * Two ratings are available:
+ * <ul>
+ *     <li>SCORE_GAIN: the score the agent gains with the action (including a scoring triggered by the action)</li>
+ *     <li>SCORING_FIELD: BoardHeuristics.rateBoard(), i.e. the score plus the points of the building the agent stands
+ *     on, relative to the best other agent. This prefers moving the own agent to valuable buildings (and the other
+ *     agents away from them) before the scoring happens.</li>
+ * </ul>
+ */
+public class GreedyPlayoutPolicy implements PlayoutPolicy {
+
+    public enum Rating {
+        SCORE_GAIN, SCORING_FIELD
+    }
+
+    private final Rating rating;
+    private final double epsilon;
+    private final int sampleSize;
+
+    /**
+     * @param rating     how the actions are rated
+     * @param epsilon    probability of choosing a random action
+     * @param sampleSize maximum number of actions that are rated per step
+     */
+    public GreedyPlayoutPolicy(Rating rating, double epsilon, int sampleSize) {
+        this.rating = rating;
+        this.epsilon = epsilon;
+        this.sampleSize = sampleSize;
+    }
+
+    @Override
+    public HeimlichAndCoAction selectAction(HeimlichAndCo game, Set<HeimlichAndCoAction> possibleActions, Random random) {
+        if (possibleActions.size() == 1 || game.getCurrentPhase() == HeimlichAndCoPhase.DIE_ROLL_PHASE || random.nextDouble() < epsilon) {
+            return PlayoutEngine.sampleAction(possibleActions, random);
+        }
+        Agent agent = game.getPlayersToAgentsMap().get(game.getCurrentPlayer());
+        if (agent == null) {
+            return PlayoutEngine.sampleAction(possibleActions, random);
+        }
+        HeimlichAndCoBoard board = game.getBoard();
+        int score = board.getScores().get(agent);
+        HeimlichAndCoAction bestAction = null;
+        int bestRating = Integer.MIN_VALUE;
+        int ties = 0;
+        int samples = Math.min(sampleSize, possibleActions.size());
+        for (int i = 0; i < samples; i++) {
+            //sampling with replacement, which is good enough for choosing candidates
+            HeimlichAndCoAction action = PlayoutEngine.sampleAction(possibleActions, random);
+            HeimlichAndCoBoard boardAfterAction = BoardHeuristics.applyToCopy(board, action);
+            int actionRating;
+            if (rating == Rating.SCORE_GAIN) {
+                actionRating = boardAfterAction.getScores().get(agent) - score;
+            } else {
+                actionRating = BoardHeuristics.rateBoard(boardAfterAction, agent);
+            }
+            if (actionRating > bestRating) {
+                bestRating = actionRating;
+                bestAction = action;
+                ties = 1;
+            } else if (actionRating == bestRating && random.nextInt(++ties) == 0) {
+                bestAction = action;
+            }
+        }
+        return bestAction;
+    }
+}
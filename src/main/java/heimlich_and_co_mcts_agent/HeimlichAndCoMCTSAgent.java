@@ -3,22 +3,55 @@ package heimlich_and_co_mcts_agent;
 import at.ac.tuwien.ifs.sge.agent.AbstractGameAgent;
 import at.ac.tuwien.ifs.sge.agent.GameAgent;
 import at.ac.tuwien.ifs.sge.engine.Logger;
+import at.ac.tuwien.ifs.sge.game.ActionRecord;
+import at.ac.tuwien.ifs.sge.util.pair.ImmutablePair;
 import at.ac.tuwien.ifs.sge.util.pair.Pair;
 import heimlich_and_co.HeimlichAndCo;
 import heimlich_and_co.actions.HeimlichAndCoAction;
-import heimlich_and_co.enums.Agent;
+import heimlich_and_co_agent_core.BeliefTracker;
+import heimlich_and_co_agent_core.HiddenInformation;
+import heimlich_and_co_agent_core.MetricsLog;
+import heimlich_and_co_agent_core.MoveTimeManager;
+import heimlich_and_co_agent_core.OpeningTable;
+import heimlich_and_co_agent_core.SearchMetrics;
+import heimlich_and_co_agent_core.SearchStatistics;
 
+import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 
-public class HeimlichAndCoMCTSAgent extends AbstractGameAgent<HeimlichAndCo, HeimlichAndCoAction> implements GameAgent<HeimlichAndCo, HeimlichAndCoAction> {
+public class HeimlichAndCoMCTSAgent extends AbstractGameAgent<HeimlichAndCo, HeimlichAndCoAction> implements GameAgent<HeimlichAndCo, HeimlichAndCoAction>, SearchStatistics {
 
     /**
-     * determines the depth of termination for random playouts
+     * determines the depth of termination for playouts
      * can be set to -1 to always play out till the game ends
      */
     private static final int TERMINATION_DEPTH = 64;
 
+    /**
+     * Determines how the actions of the playouts are chosen.
+     * <p>
+     * RANDOM means that uniformly random actions are played.
+     * <p>
+     * SCORE_GAIN means that, with probability 1 - PLAYOUT_EPSILON, the action with the highest score gain for the agent
+     * of the current player is played (out of PLAYOUT_SAMPLE_SIZE random candidates), see GreedyPlayoutPolicy.
+     * <p>
+     * SCORING_FIELD is like SCORE_GAIN, but the candidates are rated by the score plus the points of the building the
+     * agent stands on, relative to the best other agent, i.e. agents are moved to valuable buildings.
+     */
+    private static final PlayoutPolicyType PLAYOUT_POLICY = PlayoutPolicyType.SCORING_FIELD;
+    private static final double PLAYOUT_EPSILON = 0.2;
+    private static final int PLAYOUT_SAMPLE_SIZE = 4;
+
+    /**
+     * Determines how playouts that are cut off (at TERMINATION_DEPTH or because the time is up) are evaluated.
+     * True means that they are won with a probability depending on how far the agent of the player is ahead (see
+     * PlayoutEngine), false means that they are won iff the agent of the player has the highest score.
+     */
+    private static final boolean USE_GRADED_PLAYOUT_EVALUATION = true;
+
     /**
      * Determines the strategy for dealing with the randomness of a die roll.
      * <p>
@@ -31,44 +64,300 @@ public class HeimlichAndCoMCTSAgent extends AbstractGameAgent<HeimlichAndCo, Hei
      */
     private static final boolean SIMULATE_ALL_DIE_OUTCOMES = true;
 
+    /**
+     * Determines how (and if) the search is parallelized.
+     * <p>
+     * NONE means that the search is done on the calling thread only.
+     * <p>
+     * ROOT means that each thread builds its own tree (from the same determinized game). When the time is up, the
+     * statistics of the children of the root nodes are merged and the best action is chosen from the merged statistics.
+     * <p>
+     * TREE means that all threads work on the same tree. Virtual losses are used s.t. the threads do not all select
+     * the same path at the same time.
+     */
+    private static final ParallelizationMode PARALLELIZATION_MODE = ParallelizationMode.TREE;
+
+    /**
+     * Determines how many threads are used for the search (if PARALLELIZATION_MODE is not NONE).
+     */
+    private static final int NUMBER_OF_THREADS = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Determines how the tree is stored.
+     * <p>
+     * False means that every node is an MctsNode object which stores its own copy of the game state.
+     * <p>
+     * True means that a CompactMctsTree is used, which stores the statistics of all nodes in primitive arrays and
+     * rebuilds game states by replaying actions from the root. This uses much less memory per node.
+     * The compact tree supports all PARALLELIZATION_MODEs.
+     */
+    private static final boolean USE_COMPACT_TREE = false;
+
+    /**
+     * Determines how the hidden information (agents and cards of the other players) is dealt with.
+     * <p>
+     * False means that the game is determinized once per move (random agents, other players have no cards) and a
+     * normal MCTS tree is built for that determinization.
+     * <p>
+     * True means that information set MCTS is used: a new determinization is sampled for every iteration (random
+     * agents, cards of the other players and card stack drawn from the cards that were not seen yet), and all
+     * determinizations share one tree whose nodes are identified by the actions leading to them. With
+     * PARALLELIZATION_MODE ROOT or TREE, the threads share that tree (with virtual losses).
+     */
+    private static final boolean USE_INFORMATION_SET_MCTS = false;
+
+    /**
+     * Determines whether the tree of the previous move is reused.
+     * <p>
+     * True means that the subtree matching the actions played since the last move of this agent becomes the new root,
+     * s.t. the playouts done during the previous move count towards the current decision. If no such subtree was
+     * explored, or its state does not match the observed game, a new tree is built.
+     * The reused tree keeps the agents of the other players that were guessed when it was built. With USE_BELIEFS, the
+     * tree is therefore only reused while these agents are still plausible according to the beliefs (see
+     * BeliefTracker.isPlausible()), otherwise a new tree is built from a determinization sampled from the beliefs.
+     * Only used for the MctsNode tree without ROOT parallelization.
+     */
+    private static final boolean REUSE_TREE = true;
+
+    /**
+     * Determines whether nodes of the same game state (reached by different orders of actions) share their statistics
+     * and game state through a transposition table (see MctsTranspositionTable).
+     * Only used for the MctsNode tree without ROOT parallelization.
+     */
+    private static final boolean USE_TRANSPOSITION_TABLE = true;
+
+    /**
+     * The transposition table has 2^TRANSPOSITION_TABLE_SIZE_LOG2 entries.
+     */
+    private static final int TRANSPOSITION_TABLE_SIZE_LOG2 = 16;
+
+    /**
+     * Determines whether the agent keeps searching while the other players are thinking (between ponderStart() and
+     * ponderStop()). The search is continued on the subtree of the action that was chosen in the previous move, which
+     * is then reused in the next move. Therefore, this only has an effect if REUSE_TREE is true.
+     * With PARALLELIZATION_MODE TREE, NUMBER_OF_THREADS threads are used for pondering, otherwise one thread.
+     */
+    private static final boolean PONDER = true;
+
+    /**
+     * Pondering is stopped before ponderStop() is called if the estimated memory of the pondered tree (see
+     * MctsNode.getMemoryEstimateBytes()) reaches this share of the maximum heap size, s.t. pondering during long turns of
+     * the other players does not run out of memory.
+     */
+    private static final double PONDER_MAXIMUM_MEMORY_SHARE = 0.5;
+
+    /**
+     * Determines whether the search is stopped before the time budget of the move (see MoveTimeManager) is used up if
+     * the best action can no longer be overtaken by another action in the remaining time.
+     * Only used for MCTS on a (shared) tree, i.e. not with USE_COMPACT_TREE, USE_INFORMATION_SET_MCTS or ROOT
+     * parallelization.
+     */
+    private static final boolean USE_EARLY_STOPPING = true;
+
+    /**
+     * Determines whether the agents of the other players are guessed from the moves they made so far (see
+     * BeliefTracker) instead of uniformly at random.
+     */
+    private static final boolean USE_BELIEFS = true;
+
+    /**
+     * Determines whether the action is taken from the opening table (see OpeningTable) without searching, if the game
+     * is in the table. The table is only used if the system property OpeningTable.FILE_PROPERTY is set.
+     */
+    private static final boolean USE_OPENING_TABLE = true;
+
+    /**
+     * The opening table, opened in the first move; null if there is none
+     */
+    private OpeningTable openingTable;
+    private boolean openingTableOpened;
+
+    /**
+     * The beliefs about the agents of the other players, created in the first move; null if USE_BELIEFS is false
+     */
+    private BeliefTracker beliefs;
+
+    /**
+     * Executes the search threads, created when it is first needed and shut down in tearDown() or destroy().
+     */
+    private ExecutorService executorService;
+
+    /**
+     * Created when it is first needed and kept for the following moves (as the reused tree still refers to it)
+     */
+    private MctsTranspositionTable transpositionTable;
+
+    /**
+     * The subtree of the action chosen in the last move (if REUSE_TREE is true), null if there is none
+     */
+    private MctsNode previousTree;
+
+    /**
+     * The number of action records of the game after the action chosen in the last move
+     */
+    private int previousActionRecordCount;
+
+    /**
+     * Does the random playouts and counts them, a new one is created for every move
+     */
+    private PlayoutEngine playoutEngine;
+
+    /**
+     * Decides when the search of the current move is stopped, a new one is created for every move
+     */
+    private MoveTimeManager timeManager;
+
+    /**
+     * The metrics of the current move (see MetricsLog), a new one is created for every move
+     */
+    private SearchMetrics metrics;
+
+    /**
+     * The playouts done while computing actions in all moves so far (without pondering)
+     */
+    private long totalPlayouts;
+
+    /**
+     * The nodes in the trees after computing actions in all moves so far
+     */
+    private long totalNodeCount;
+
+    /**
+     * The wins and playouts of the child of the action chosen in the last move, 0 if the action was not searched
+     */
+    private int lastActionWins;
+    private int lastActionPlayouts;
+
+    /**
+     * The running pondering workers, null if the agent is not pondering
+     */
+    private List<Future<?>> ponderFutures;
+
+    /**
+     * Set to stop the pondering workers
+     */
+    private volatile boolean ponderStopRequested;
+
+    /**
+     * The number of nodes in the pondered tree, counted up with every expansion while pondering
+     */
+    private final AtomicInteger ponderNodeCount = new AtomicInteger();
+
     public HeimlichAndCoMCTSAgent(Logger logger) {
         super(logger);
     }
 
+    public enum ParallelizationMode {
+        NONE, ROOT, TREE
+    }
+
+    public enum PlayoutPolicyType {
+        RANDOM, SCORE_GAIN, SCORING_FIELD
+    }
+
     @Override
     public HeimlichAndCoAction computeNextAction(HeimlichAndCo game, long l, TimeUnit timeUnit) {
         log.deb("MctsAgent: Computing next action\n");
         super.setTimers(l, timeUnit);
+        ponderStop();
+        playoutEngine = new PlayoutEngine(this.playerId, TERMINATION_DEPTH, createPlayoutPolicy(), USE_GRADED_PLAYOUT_EVALUATION);
 
         Set<HeimlichAndCoAction> possibleActions = game.getPossibleActions();
         if (possibleActions.size() == 1) {
             return game.getPossibleActions().iterator().next();
         }
+        lastActionWins = 0;
+        lastActionPlayouts = 0;
+        HeimlichAndCoAction openingAction = getOpeningAction(game);
+        if (openingAction != null) {
+            previousTree = null;
+            return openingAction;
+        }
+        timeManager = new MoveTimeManager(nanosLeft(), game.getCurrentPhase(), possibleActions.size());
+        log.deb("MctsAgent: Time budget for this move: " + timeManager.getBudgetNanos() / 1_000_000 + "ms\n");
+        metrics = new SearchMetrics("mcts", this.playerId);
+        metrics.setMoveNumber(game.getActionRecords().size());
+        metrics.setPhase(game.getCurrentPhase().name());
+        metrics.setBranchingFactor(possibleActions.size());
+        metrics.setBudgetNanos(timeManager.getBudgetNanos());
 
         try {
+            BeliefTracker beliefs = updateBeliefs(game);
+            if (USE_INFORMATION_SET_MCTS) {
+                log.deb("MctsAgent: Doing information set MCTS");
+                return computeNextActionInformationSet(game, beliefs);
+            }
             log.deb("MctsAgent: Adding information to the game");
-            addInformationToGame(game);
+            HiddenInformation.addInformationToGame(game, this.playerId, random, beliefs);
 
             if (SIMULATE_ALL_DIE_OUTCOMES) {
                 game.setAllowCustomDieRolls(true);
             }
-            MctsNode.setPlayerId(this.playerId);
-            MctsNode tree = new MctsNode(0, 0, game, null);
+            if (USE_COMPACT_TREE) {
+                log.deb("MctsAgent: Doing MCTS on a compact tree");
+                return computeNextActionCompact(game);
+            }
+            if (PARALLELIZATION_MODE == ParallelizationMode.ROOT && NUMBER_OF_THREADS > 1) {
+                log.deb("MctsAgent: Doing root parallel MCTS");
+                return computeNextActionRootParallel(game);
+            }
+            MctsNode reusedTree = REUSE_TREE ? findReusableTree(game, beliefs) : null;
+            if (USE_TRANSPOSITION_TABLE && transpositionTable == null) {
+                transpositionTable = new MctsTranspositionTable(TRANSPOSITION_TABLE_SIZE_LOG2);
+            }
+            if (transpositionTable != null) {
+                transpositionTable.newSearch(reusedTree != null);
+            }
+            MctsNode tree = reusedTree != null ? reusedTree : new MctsNode(this.playerId, game, transpositionTable);
             log.deb("MctsAgent: Doing MCTS");
-            while (!this.shouldStopComputation()) {
-                Pair<MctsNode, HeimlichAndCoAction> selectionPair = mctsSelection(tree, SIMULATE_ALL_DIE_OUTCOMES);
-                MctsNode newNode = mctsExpansion(selectionPair.getA(), selectionPair.getB());
-                int win = mctsSimulation(newNode);
-                mctsBackpropagation(newNode, win);
+            if (PARALLELIZATION_MODE == ParallelizationMode.TREE && NUMBER_OF_THREADS > 1) {
+                List<Callable<Void>> workers = new ArrayList<>(NUMBER_OF_THREADS);
+                for (int i = 0; i < NUMBER_OF_THREADS; i++) {
+                    workers.add(() -> {
+                        mcts(tree, true, () -> shouldStopSearch(tree));
+                        return null;
+                    });
+                }
+                runWorkers(workers);
+            } else {
+                mcts(tree, false, () -> shouldStopSearch(tree));
+            }
+            if (timeManager.isDecided()) {
+                log.inf("MctsAgent: Stopped early after " + timeManager.getElapsedNanos() / 1_000_000 + "ms, as the best action was decided\n");
             }
             log.inf("MctsAgent: Playouts done from root node: " + tree.getPlayouts() + "\n");
+            if (tree.isProven()) {
+                log.inf("MctsAgent: The game is proven to be " + (tree.getProvenResult() == 1 ? "won" : "lost") + "\n");
+            }
+            int nodeCount = tree.getNodeCount();
+            totalNodeCount += nodeCount;
+            metrics.setNodes(nodeCount);
+            metrics.setMaxDepth(tree.getMaxDepth());
+            metrics.setMemoryEstimateBytes(MctsNode.getMemoryEstimateBytes(nodeCount));
+            log.inf("MctsAgent: Nodes in tree: " + nodeCount + "\n");
+            if (transpositionTable != null) {
+                log.inf("MctsAgent: Transposition table hits: " + transpositionTable.getHits() + ", stores: " + transpositionTable.getStores() + "\n");
+            }
             log.inf("MctsAgent: Wins/playouts from selected child node: " + tree.getBestChild().getA().getWins() + "/" + tree.getBestChild().getA().getPlayouts() + "\n");
             log.inf("MctsAgent: Q(s,a) of chosen action: " + tree.calculateQsaOfChild(tree.getBestChild().getB()) + "\n");
-            return tree.getBestChild().getB();
+            ImmutablePair<MctsNode, HeimlichAndCoAction> bestChild = tree.getBestChild();
+            lastActionWins = bestChild.getA().getWins();
+            lastActionPlayouts = bestChild.getA().getPlayouts();
+            if (REUSE_TREE) {
+                previousTree = bestChild.getA();
+                previousTree.makeRoot();
+                previousActionRecordCount = game.getActionRecords().size() + 1;
+            }
+            return bestChild.getB();
 
         } catch (Exception ex) {
             log.err(ex);
             log.err("MctsAgent: An error occurred while calculating the best action. Playing a random action.\n");
+        } finally {
+            totalPlayouts += playoutEngine.getPlayouts();
+            log.inf("MctsAgent: Playouts per second: " + String.format("%.1f", playoutEngine.getPlayoutsPerSecond())
+                    + " (steps per second: " + String.format("%.1f", playoutEngine.getStepsPerSecond()) + ")\n");
+            writeMetrics();
         }
         //If an exception is encountered, we play a random action s.t. we do not automatically lose the game
         HeimlichAndCoAction[] actions = game.getPossibleActions().toArray(new HeimlichAndCoAction[0]);
@@ -76,35 +365,483 @@ public class HeimlichAndCoMCTSAgent extends AbstractGameAgent<HeimlichAndCo, Hei
     }
 
     /**
-     * Adds information that was removed by the game (i.e. hidden information).
-     * Therefore, adds entries to the map which maps agents to players and entries to the map mapping the cards of players.
-     * The agents are randomly assigned to players. And players are assumed to have no cards.
+     * Updates the beliefs about the agents of the other players with the actions that happened since the last move.
      *
-     * @param game to add information to
-     */
-    private void addInformationToGame(HeimlichAndCo game) {
-        //we need to determinize the tree, i.e. add information that is secret that the game hid from us
-        //here we just guess
-        Map<Integer, Agent> playersToAgentsMap = game.getPlayersToAgentsMap();
-        List<Agent> unassignedAgents = Arrays.asList(game.getBoard().getAgents());
-        unassignedAgents = new LinkedList<>(unassignedAgents);
-        unassignedAgents.remove(playersToAgentsMap.get(this.playerId));
-        for (int i = 0; i < game.getNumberOfPlayers(); i++) {
-            if (i == this.playerId) {
+     * @param game as seen by this agent, before hidden information is added
+     * @return the updated beliefs, null if USE_BELIEFS is false
+     */
+    private BeliefTracker updateBeliefs(HeimlichAndCo game) {
+        if (!USE_BELIEFS) {
+            return null;
+        }
+        if (beliefs == null) {
+            beliefs = new BeliefTracker(this.playerId);
+        }
+        beliefs.update(game);
+        return beliefs;
+    }
+
+    /**
+     * @return the action of the game in the opening table, null if the game is not in the table or there is no table
+     */
+    private HeimlichAndCoAction getOpeningAction(HeimlichAndCo game) {
+        if (!USE_OPENING_TABLE) {
+            return null;
+        }
+        if (!openingTableOpened) {
+            openingTableOpened = true;
+            try {
+                openingTable = OpeningTable.openDefault();
+            } catch (IOException | IllegalArgumentException ex) {
+                log.err("MctsAgent: Could not open the opening table: " + ex.getMessage() + "\n");
+            }
+        }
+        if (openingTable == null) {
+            return null;
+        }
+        HeimlichAndCoAction action = openingTable.getBestAction(game);
+        if (action != null) {
+            log.inf("MctsAgent: Took the action from the opening table\n");
+        }
+        return action;
+    }
+
+    /**
+     * Completes the metrics of the current move and writes them to the metrics file, if one is configured (see
+     * MetricsLog).
+     */
+    private void writeMetrics() {
+        metrics.setPlayouts(playoutEngine.getPlayouts());
+        metrics.setPlayoutsPerSecond(playoutEngine.getPlayoutsPerSecond());
+        metrics.setTimeToFirstResultNanos(timeManager.getFirstResultNanos());
+        metrics.setStoppedEarly(timeManager.stoppedBeforeBudget());
+        metrics.finish(nanosLeft());
+        if (!MetricsLog.isEnabled()) {
+            return;
+        }
+        try {
+            MetricsLog.write(metrics);
+        } catch (IOException ex) {
+            log.err("MctsAgent: Could not write the search metrics: " + ex.getMessage() + "\n");
+        }
+    }
+
+    /**
+     * @return whether the search of the current move has to be stopped, because its time budget is used up
+     */
+    private boolean shouldStopSearch() {
+        return timeManager.shouldStop() || shouldStopComputation();
+    }
+
+    /**
+     * Like shouldStopSearch(), but additionally stops the search if the best child of the tree can no longer be
+     * overtaken with the playouts that can still be done in the time budget.
+     */
+    private boolean shouldStopSearch(MctsNode tree) {
+        if (shouldStopSearch()) {
+            return true;
+        }
+        return USE_EARLY_STOPPING && timeManager.isDecided(playoutEngine.getPlayouts(), remainingPlayouts -> !tree.canBestChildBeOvertaken(remainingPlayouts));
+    }
+
+    @Override
+    public long getTotalNodeCount() {
+        return totalNodeCount;
+    }
+
+    /**
+     * @return the wins of the playouts through the action chosen in the last move, 0 if it was not searched (e.g. as
+     * it was the only possible action or taken from the opening table)
+     */
+    public int getLastActionWins() {
+        return lastActionWins;
+    }
+
+    /**
+     * @return the playouts through the action chosen in the last move, 0 if it was not searched
+     */
+    public int getLastActionPlayouts() {
+        return lastActionPlayouts;
+    }
+
+    @Override
+    public long getTotalPlayouts() {
+        return totalPlayouts;
+    }
+
+    @Override
+    public void tearDown() {
+        ponderStop();
+        shutdownExecutorService();
+        previousTree = null;
+        transpositionTable = null;
+    }
+
+    @Override
+    public void destroy() {
+        ponderStop();
+        shutdownExecutorService();
+    }
+
+    /**
+     * Starts searching the subtree of the action chosen in the previous move on background threads, until
+     * ponderStop() is called or the tree reaches the memory limit of PONDER_MAXIMUM_MEMORY_SHARE.
+     */
+    @Override
+    public void ponderStart() {
+        if (!PONDER || previousTree == null || ponderFutures != null) {
+            return;
+        }
+        log.deb("MctsAgent: Start pondering\n");
+        MctsNode tree = previousTree;
+        boolean treeParallel = PARALLELIZATION_MODE == ParallelizationMode.TREE && NUMBER_OF_THREADS > 1;
+        long maximumNodeCount = (long) (Runtime.getRuntime().maxMemory() * PONDER_MAXIMUM_MEMORY_SHARE) / MctsNode.getMemoryEstimateBytes(1);
+        ponderStopRequested = false;
+        ponderNodeCount.set(tree.getNodeCount());
+        ponderFutures = new ArrayList<>();
+        for (int i = 0; i < (treeParallel ? NUMBER_OF_THREADS : 1); i++) {
+            ponderFutures.add(getExecutorService().submit(() -> mcts(tree, treeParallel, () -> ponderStopRequested || ponderNodeCount.get() >= maximumNodeCount, ponderNodeCount)));
+        }
+    }
+
+    /**
+     * Stops pondering and waits until all pondering workers are finished.
+     */
+    @Override
+    public void ponderStop() {
+        if (ponderFutures == null) {
+            return;
+        }
+        ponderStopRequested = true;
+        for (Future<?> future : ponderFutures) {
+            try {
+                future.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException | CancellationException ex) {
+                log.err(ex);
+                log.err("MctsAgent: An error occurred while pondering.\n");
+            }
+        }
+        ponderFutures = null;
+        if (previousTree != null) {
+            log.deb("MctsAgent: Stopped pondering, playouts in the pondered tree: " + previousTree.getPlayouts()
+                    + ", nodes: " + ponderNodeCount.get() + "\n");
+        }
+    }
+
+    /**
+     * Does MCTS iterations on the given tree until stopCondition is true.
+     *
+     * @param tree           the root node of the tree to search
+     * @param addVirtualLoss whether virtual losses should be used (i.e. when multiple threads work on the same tree)
+     * @param stopCondition  determines when to stop the search
+     */
+    private void mcts(MctsNode tree, boolean addVirtualLoss, BooleanSupplier stopCondition) {
+        mcts(tree, addVirtualLoss, stopCondition, null);
+    }
+
+    /**
+     * Like mcts() without nodeCount, but additionally counts the expanded nodes.
+     *
+     * @param nodeCount incremented for every node that is added to the tree, null to not count the nodes
+     */
+    private void mcts(MctsNode tree, boolean addVirtualLoss, BooleanSupplier stopCondition, AtomicInteger nodeCount) {
+        Random random = ThreadLocalRandom.current();
+        MctsPath path = new MctsPath();
+        while (!stopCondition.getAsBoolean()) {
+            Pair<MctsNode, HeimlichAndCoAction> selectionPair = mctsSelection(tree, SIMULATE_ALL_DIE_OUTCOMES, addVirtualLoss, random, path);
+            MctsNode newNode = mctsExpansion(selectionPair.getA(), selectionPair.getB());
+            if (newNode != selectionPair.getA()) {
+                if (addVirtualLoss) {
+                    newNode.addVirtualLoss();
+                }
+                if (nodeCount != null) {
+                    nodeCount.incrementAndGet();
+                }
+                path.add(newNode);
+            }
+            //the result of a proven node (e.g. a terminal node) is known without a playout
+            int win = newNode.isProven() ? newNode.getProvenResult() : mctsSimulation(newNode, stopCondition, path);
+            mctsBackpropagation(path, win, addVirtualLoss);
+            timeManager.markFirstResult();
+        }
+    }
+
+    /**
+     * Does MCTS iterations on the given compact tree until stopCondition is true.
+     *
+     * @param tree           the tree to search
+     * @param addVirtualLoss whether virtual losses should be used (i.e. when multiple threads work on the same tree)
+     * @param stopCondition  determines when to stop the search
+     */
+    private void compactMcts(CompactMctsTree tree, boolean addVirtualLoss, BooleanSupplier stopCondition) {
+        Random random = ThreadLocalRandom.current();
+        while (!stopCondition.getAsBoolean()) {
+            int selectedNode = tree.selection(addVirtualLoss, random);
+            HeimlichAndCo game = tree.getGame(selectedNode);
+            int newNode = tree.expansion(selectedNode, game, addVirtualLoss, random);
+            int win = playout(game, stopCondition);
+            tree.backpropagation(newNode, win, addVirtualLoss);
+            timeManager.markFirstResult();
+        }
+    }
+
+    /**
+     * Does MCTS on compact trees, parallelized according to PARALLELIZATION_MODE.
+     *
+     * @param game the (already determinized) game
+     * @return the best action
+     */
+    private HeimlichAndCoAction computeNextActionCompact(HeimlichAndCo game) throws InterruptedException, ExecutionException {
+        boolean parallel = PARALLELIZATION_MODE != ParallelizationMode.NONE && NUMBER_OF_THREADS > 1;
+        List<CompactMctsTree> trees = new ArrayList<>();
+        List<Callable<Void>> workers = new ArrayList<>();
+        if (parallel && PARALLELIZATION_MODE == ParallelizationMode.ROOT) {
+            for (int i = 0; i < NUMBER_OF_THREADS; i++) {
+                CompactMctsTree tree = new CompactMctsTree(game, this.playerId, SIMULATE_ALL_DIE_OUTCOMES);
+                trees.add(tree);
+                workers.add(() -> {
+                    compactMcts(tree, false, this::shouldStopSearch);
+                    return null;
+                });
+            }
+        } else {
+            CompactMctsTree tree = new CompactMctsTree(game, this.playerId, SIMULATE_ALL_DIE_OUTCOMES);
+            trees.add(tree);
+            if (parallel) {
+                for (int i = 0; i < NUMBER_OF_THREADS; i++) {
+                    workers.add(() -> {
+                        compactMcts(tree, true, this::shouldStopSearch);
+                        return null;
+                    });
+                }
+            }
+        }
+        if (workers.isEmpty()) {
+            compactMcts(trees.get(0), false, this::shouldStopSearch);
+        } else {
+            runWorkers(workers);
+        }
+
+        List<Map<HeimlichAndCoAction, int[]>> rootChildStatistics = new ArrayList<>(trees.size());
+        int totalPlayouts = 0;
+        int totalNodes = 0;
+        long totalBytes = 0;
+        for (CompactMctsTree tree : trees) {
+            rootChildStatistics.add(tree.getRootChildStatistics());
+            totalPlayouts += tree.getPlayouts();
+            totalNodes += tree.getNodeCount();
+            totalBytes += tree.getAllocatedBytes();
+        }
+        log.inf("MctsAgent: Playouts done from root nodes of " + trees.size() + " compact trees: " + totalPlayouts + "\n");
+        totalNodeCount += totalNodes;
+        metrics.setNodes(totalNodes);
+        metrics.setMemoryEstimateBytes(totalBytes);
+        log.inf("MctsAgent: Nodes in compact trees: " + totalNodes + ", bytes per node: " + String.format("%.1f", ((double) totalBytes) / totalNodes) + "\n");
+        return getBestMergedAction(rootChildStatistics);
+    }
+
+    /**
+     * Does information set MCTS iterations on the given tree until stopCondition is true. Every iteration starts with a
+     * new determinization of the observed game.
+     *
+     * @param tree           the root node of the tree to search
+     * @param determinizer   creates the determinizations of the observed game
+     * @param addVirtualLoss whether virtual losses should be used (i.e. when multiple threads work on the same tree)
+     * @param stopCondition  determines when to stop the search
+     */
+    private void informationSetMcts(InformationSetMctsNode tree, Determinizer determinizer, boolean addVirtualLoss, BooleanSupplier stopCondition) {
+        while (!stopCondition.getAsBoolean()) {
+            HeimlichAndCo determinization = determinizer.determinize(ThreadLocalRandom.current());
+            if (SIMULATE_ALL_DIE_OUTCOMES) {
+                determinization.setAllowCustomDieRolls(true);
+            }
+            Pair<InformationSetMctsNode, HeimlichAndCoAction> selectionPair = tree.selection(determinization, SIMULATE_ALL_DIE_OUTCOMES, addVirtualLoss);
+            InformationSetMctsNode newNode = selectionPair.getA().expansion(determinization, selectionPair.getB());
+            if (addVirtualLoss && newNode != selectionPair.getA()) {
+                newNode.addVirtualLoss();
+            }
+            int win = playout(determinization, stopCondition);
+            newNode.backpropagation(win, addVirtualLoss);
+            timeManager.markFirstResult();
+        }
+    }
+
+    /**
+     * Does information set MCTS from the game as it was observed by this agent (i.e. with the information that the
+     * game hid from us still missing).
+     *
+     * @param game    the game as observed by this agent
+     * @param beliefs the determinizations are sampled from, null to sample them uniformly
+     * @return the best action according to the information set tree
+     */
+    private HeimlichAndCoAction computeNextActionInformationSet(HeimlichAndCo game, BeliefTracker beliefs) throws InterruptedException, ExecutionException {
+        Determinizer determinizer = new Determinizer(game, this.playerId, beliefs);
+        InformationSetMctsNode tree = new InformationSetMctsNode(this.playerId, null);
+        if (PARALLELIZATION_MODE != ParallelizationMode.NONE && NUMBER_OF_THREADS > 1) {
+            List<Callable<Void>> workers = new ArrayList<>(NUMBER_OF_THREADS);
+            for (int i = 0; i < NUMBER_OF_THREADS; i++) {
+                workers.add(() -> {
+                    informationSetMcts(tree, determinizer, true, this::shouldStopSearch);
+                    return null;
+                });
+            }
+            runWorkers(workers);
+        } else {
+            informationSetMcts(tree, determinizer, false, this::shouldStopSearch);
+        }
+        log.inf("MctsAgent: Playouts (determinizations) done from root node: " + tree.getPlayouts() + "\n");
+        log.inf("MctsAgent: Wins/playouts from selected child node: " + tree.getBestChild().getA().getWins() + "/" + tree.getBestChild().getA().getPlayouts() + "\n");
+        log.inf("MctsAgent: Q(s,a) of chosen action: " + tree.calculateQsaOfChild(tree.getBestChild().getB()) + "\n");
+        return tree.getBestChild().getB();
+    }
+
+    /**
+     * Does root parallel MCTS, i.e. every thread builds its own tree from the given game. In the end, the wins and
+     * playouts of the children of all root nodes are summed up per action and the action with the best merged
+     * Q(s,a) is chosen.
+     *
+     * @param game the (already determinized) game
+     * @return the best action according to the merged statistics
+     */
+    private HeimlichAndCoAction computeNextActionRootParallel(HeimlichAndCo game) throws InterruptedException, ExecutionException {
+        List<MctsNode> trees = new ArrayList<>(NUMBER_OF_THREADS);
+        List<Callable<Void>> workers = new ArrayList<>(NUMBER_OF_THREADS);
+        for (int i = 0; i < NUMBER_OF_THREADS; i++) {
+            MctsNode tree = new MctsNode(this.playerId, game);
+            trees.add(tree);
+            workers.add(() -> {
+                mcts(tree, false, this::shouldStopSearch);
+                return null;
+            });
+        }
+        runWorkers(workers);
+
+        List<Map<HeimlichAndCoAction, int[]>> rootChildStatistics = new ArrayList<>(trees.size());
+        int totalPlayouts = 0;
+        int totalNodes = 0;
+        int maxDepth = 0;
+        for (MctsNode tree : trees) {
+            totalPlayouts += tree.getPlayouts();
+            totalNodes += tree.getNodeCount();
+            maxDepth = Math.max(maxDepth, tree.getMaxDepth());
+            Map<HeimlichAndCoAction, int[]> statistics = new HashMap<>();
+            for (Map.Entry<HeimlichAndCoAction, MctsNode> entry : tree.getChildren().entrySet()) {
+                statistics.put(entry.getKey(), new int[]{entry.getValue().getWins(), entry.getValue().getPlayouts()});
+            }
+            rootChildStatistics.add(statistics);
+        }
+        log.inf("MctsAgent: Playouts done from root nodes of " + trees.size() + " trees: " + totalPlayouts + "\n");
+        totalNodeCount += totalNodes;
+        metrics.setNodes(totalNodes);
+        metrics.setMaxDepth(maxDepth);
+        metrics.setMemoryEstimateBytes(MctsNode.getMemoryEstimateBytes(totalNodes));
+        return getBestMergedAction(rootChildStatistics);
+    }
+
+    /**
+     * Sums up the wins and playouts of the children of multiple root nodes per action and chooses the action with the
+     * best merged Q(s,a) (ties are broken randomly).
+     *
+     * @param rootChildStatistics wins and playouts (in this order) per action, one map per tree
+     * @return the best action according to the merged statistics
+     */
+    private HeimlichAndCoAction getBestMergedAction(List<Map<HeimlichAndCoAction, int[]>> rootChildStatistics) {
+        Map<HeimlichAndCoAction, int[]> mergedStatistics = new HashMap<>();
+        for (Map<HeimlichAndCoAction, int[]> treeStatistics : rootChildStatistics) {
+            for (Map.Entry<HeimlichAndCoAction, int[]> entry : treeStatistics.entrySet()) {
+                int[] statistics = mergedStatistics.computeIfAbsent(entry.getKey(), action -> new int[2]);
+                statistics[0] += entry.getValue()[0];
+                statistics[1] += entry.getValue()[1];
+            }
+        }
+        List<HeimlichAndCoAction> bestActions = new ArrayList<>();
+        double bestQsa = -1;
+        for (Map.Entry<HeimlichAndCoAction, int[]> entry : mergedStatistics.entrySet()) {
+            if (entry.getValue()[1] == 0) {
                 continue;
             }
-            Agent chosenAgent = unassignedAgents.get(super.random.nextInt(unassignedAgents.size()));
-            playersToAgentsMap.put(i, chosenAgent); //choose a random agent
-            unassignedAgents.remove(chosenAgent);
-            if (game.isWithCards()) {
-                game.getCards().put(i, new LinkedList<>()); //other players do not get cards for now
+            double qSA = ((double) entry.getValue()[0]) / entry.getValue()[1];
+            if (qSA > bestQsa) {
+                bestQsa = qSA;
+                bestActions.clear();
+            }
+            if (qSA == bestQsa) {
+                bestActions.add(entry.getKey());
             }
         }
+        log.inf("MctsAgent: Merged Q(s,a) of chosen action: " + bestQsa + "\n");
+        return bestActions.get(super.random.nextInt(bestActions.size()));
     }
 
-    private void mctsBackpropagation(MctsNode node, int win) {
+    /**
+     * Finds the subtree of the previous tree that belongs to the given game, by following the actions that were
+     * played since the action chosen in the previous move. The previous tree is discarded in any case.
+     * The determinization of the given game is not used for a reused subtree, the subtree keeps its own.
+     *
+     * @param game    the (already determinized) game
+     * @param beliefs the agents of the subtree have to be plausible according to, null to not check them
+     * @return the root of the subtree, or null if no matching subtree with plausible agents exists
+     */
+    private MctsNode findReusableTree(HeimlichAndCo game, BeliefTracker beliefs) {
+        MctsNode tree = previousTree;
+        previousTree = null;
+        List<ActionRecord<HeimlichAndCoAction>> actionRecords = game.getActionRecords();
+        if (tree == null || actionRecords.size() < previousActionRecordCount) {
+            return null;
+        }
+        List<HeimlichAndCoAction> actions = new ArrayList<>(actionRecords.size() - previousActionRecordCount);
+        for (ActionRecord<HeimlichAndCoAction> actionRecord : actionRecords.subList(previousActionRecordCount, actionRecords.size())) {
+            actions.add(actionRecord.getAction());
+        }
+        MctsNode subtree = tree.findDescendant(actions, game.getBoard().getLastDieRoll());
+        if (subtree == null || !subtree.matches(game, this.playerId)) {
+            log.deb("MctsAgent: No matching subtree found, building a new tree\n");
+            return null;
+        }
+        if (beliefs != null && !beliefs.isPlausible(subtree.getGame().getPlayersToAgentsMap())) {
+            log.deb("MctsAgent: The agents of the subtree are implausible according to the beliefs, building a new tree\n");
+            return null;
+        }
+        subtree.makeRoot();
+        log.inf("MctsAgent: Reusing subtree with " + subtree.getPlayouts() + " playouts\n");
+        return subtree;
+    }
+
+    /**
+     * Runs the given workers on the executor service and waits until all of them are finished.
+     * If one of the workers failed, the exception is rethrown after all workers are finished.
+     *
+     * @param workers to run
+     */
+    private void runWorkers(List<Callable<Void>> workers) throws InterruptedException, ExecutionException {
+        for (Future<Void> future : getExecutorService().invokeAll(workers)) {
+            future.get();
+        }
+    }
+
+    private ExecutorService getExecutorService() {
+        if (executorService == null) {
+            executorService = Executors.newFixedThreadPool(NUMBER_OF_THREADS, runnable -> {
+                Thread thread = new Thread(runnable, "MctsAgent-worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executorService;
+    }
+
+    private void shutdownExecutorService() {
+        if (executorService != null) {
+            executorService.shutdownNow();
+            executorService = null;
+        }
+    }
+
+    private void mctsBackpropagation(MctsPath path, int win, boolean removeVirtualLoss) {
         log.deb("MctsAgent: In Backpropagation\n");
-        node.backpropagation(win);
+        path.backpropagation(win, removeVirtualLoss);
     }
 
     private MctsNode mctsExpansion(MctsNode node, HeimlichAndCoAction action) {
@@ -112,46 +849,48 @@ public class HeimlichAndCoMCTSAgent extends AbstractGameAgent<HeimlichAndCo, Hei
         return node.expansion(action);
     }
 
-    private Pair<MctsNode, HeimlichAndCoAction> mctsSelection(MctsNode node, boolean simulateAllDieOutcomes) {
+    private Pair<MctsNode, HeimlichAndCoAction> mctsSelection(MctsNode node, boolean simulateAllDieOutcomes, boolean addVirtualLoss, Random random, MctsPath path) {
         log.deb("MctsAgent: In Selection\n");
-        return node.selection(simulateAllDieOutcomes);
+        return node.selection(simulateAllDieOutcomes, addVirtualLoss, random, path);
+    }
+
+    private static PlayoutPolicy createPlayoutPolicy() {
+        switch (PLAYOUT_POLICY) {
+            case SCORE_GAIN:
+                return new GreedyPlayoutPolicy(GreedyPlayoutPolicy.Rating.SCORE_GAIN, PLAYOUT_EPSILON, PLAYOUT_SAMPLE_SIZE);
+            case SCORING_FIELD:
+                return new GreedyPlayoutPolicy(GreedyPlayoutPolicy.Rating.SCORING_FIELD, PLAYOUT_EPSILON, PLAYOUT_SAMPLE_SIZE);
+            case RANDOM:
+            default:
+                return new RandomPlayoutPolicy();
+        }
     }
 
     /**
      * Does the simulation step of MCTS. This function is implemented here and not in the MctsNode as that makes it
      * easier to handle how much time there is (left) for computation before timing out.
+     * <p>
+     * This can be called by multiple threads at the same time, therefore the thread local random is used.
      *
-     * @param node from where simulation should take place
+     * @param node          from where simulation should take place
+     * @param stopCondition determines when to stop the simulation early
+     * @param path          the path of the iteration, which records the actions of the playout for RAVE
      * @return 1 or 0, depending on whether the agent belonging to the player of this agent wins
      */
-    private int mctsSimulation(MctsNode node) {
+    private int mctsSimulation(MctsNode node, BooleanSupplier stopCondition, MctsPath path) {
         log.deb("MctsAgent: In Simulation\n");
-        HeimlichAndCo game = new HeimlichAndCo(node.getGame());
-        //use a termination depth were the game is evaluated and stopped
-        int simulationDepth = 0;
-        while (!game.isGameOver() && !this.shouldStopComputation()) {
-            if (TERMINATION_DEPTH >= 0 && simulationDepth >= TERMINATION_DEPTH) {
-                break;
-            }
-            Set<HeimlichAndCoAction> possibleActions = game.getPossibleActions();
-            HeimlichAndCoAction selectedAction = possibleActions.toArray(new HeimlichAndCoAction[1])[super.random.nextInt(possibleActions.size())];
-            game.applyAction(selectedAction);
-            simulationDepth++;
-        }
+        return playoutEngine.playout(node.getPlayoutGame(), stopCondition, path.getPlayoutListener());
+    }
 
-        Map<Agent, Integer> scores = game.getBoard().getScores();
-        int maxValue = 0;
-        for (int i : scores.values()) {
-            if (i > maxValue) {
-                maxValue = i;
-            }
-        }
-        //the game is regarded as won if the player has the highest score
-        if (maxValue == scores.get(game.getPlayersToAgentsMap().get(this.playerId))) {
-            return 1;
-        } else {
-            return 0;
-        }
+    /**
+     * Does a playout with the playout engine, see PlayoutEngine.playout().
+     *
+     * @param game          to play out, is modified if it is a PlayoutGame
+     * @param stopCondition determines when to stop the playout early
+     * @return 1 or 0, depending on whether the agent belonging to the player of this agent wins
+     */
+    private int playout(HeimlichAndCo game, BooleanSupplier stopCondition) {
+        return playoutEngine.playout(game, stopCondition);
     }
 
 }
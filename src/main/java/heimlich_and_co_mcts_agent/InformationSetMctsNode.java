@@ -0,0 +1,298 @@
+package heimlich_and_co_mcts_agent;
+
+import at.ac.tuwien.ifs.sge.util.pair.ImmutablePair;
+import at.ac.tuwien.ifs.sge.util.pair.Pair;
+import heimlich_and_co.HeimlichAndCo;
+import heimlich_and_co.actions.HeimlichAndCoAction;
+import heimlich_and_co.actions.HeimlichAndCoDieRollAction;
+import heimlich_and_co.enums.HeimlichAndCoPhase;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Node of an information set MCTS tree (single observer ISMCTS).
+ * <p>
+ * In contrast to MctsNode, a node does not store a game state. A node represents all game states that are reached by
+ * taking the same actions from the root, no matter how the hidden information (agents and cards of the other players)
+ * looks. Every iteration is done on a new determinization of the root game, which is modified in place while going
+ * down the tree. Therefore, only the children whose actions are legal in the current determinization are considered
+ * during selection.
+ * <p>
+ * As a child is not available in every determinization, the UCT formula uses the number of times the child was
+ * available for selection instead of the number of playouts of the parent.
+ */
+public class InformationSetMctsNode {
+
+    /**
+     * This constant balances between exploration and exploitation.
+     * The usually recommended value for this is square root of 2, but performance may be improved by changing it.
+     */
+    private static final double C = Math.sqrt(2);
+
+    /**
+     * the player for which the tree is build. I.e. the player for which the best action should be chosen in the end.
+     */
+    private final int playerId;
+    /**
+     * All child nodes that have been explored at least once.
+     * A child node is reached by taking (applying) the action that is used as the key.
+     * <p>
+     * This is a concurrent map, s.t. multiple threads can expand the same tree (tree parallelization).
+     */
+    private final Map<HeimlichAndCoAction, InformationSetMctsNode> children;
+    /**
+     * parent of this node; null for root node
+     */
+    private final InformationSetMctsNode parent;
+    /**
+     * saves how many wins were achieved from this node
+     * <p>
+     * Only written while holding the lock of this node, but read without locking (e.g. when calculating UCT).
+     */
+    private volatile int wins;
+    /**
+     * saves how many playouts were done from this node (or descendents of this node)
+     * <p>
+     * Only written while holding the lock of this node, but read without locking (e.g. when calculating UCT).
+     */
+    private volatile int playouts;
+    /**
+     * saves how often the action leading to this node was legal when the parent was visited during selection
+     * <p>
+     * Only written while holding the lock of this node, but read without locking (e.g. when calculating UCT).
+     */
+    private volatile int availability;
+    /**
+     * saves how many iterations currently pass through this node, but have not been backpropagated yet.
+     * Only used with tree parallelization, where each of these pending iterations is regarded as a lost playout.
+     */
+    private volatile int virtualLosses;
+
+    public InformationSetMctsNode(int playerId, InformationSetMctsNode parent) {
+        this.playerId = playerId;
+        this.parent = parent;
+        this.children = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Does backpropagation starting from the current node.
+     * Therefore, always increases playouts and increases wins depending on win.
+     * <p>
+     * If removeVirtualLoss is true, one virtual loss is removed from each node on the way to the root. This has to be
+     * used iff the virtual losses were added during selection (i.e. with tree parallelization).
+     *
+     * @param win               indicating whether the game was won or not (1 on win, 0 on loss).
+     * @param removeVirtualLoss whether a virtual loss should be removed from every node on the path
+     */
+    public void backpropagation(int win, boolean removeVirtualLoss) {
+        if (win != 0 && win != 1) {
+            throw new IllegalArgumentException("Win must be either 1 or 0");
+        }
+        InformationSetMctsNode node = this;
+        while (node != null) {
+            synchronized (node) {
+                node.playouts++;
+                node.wins += win;
+                if (removeVirtualLoss) {
+                    node.virtualLosses--;
+                }
+            }
+            node = node.parent;
+        }
+    }
+
+    /**
+     * Adds a virtual loss to this node. Has to be undone by calling backpropagation(win, true) on this node or on one
+     * of its descendants.
+     */
+    public synchronized void addVirtualLoss() {
+        this.virtualLosses++;
+    }
+
+    /**
+     * Selects a node with the ISMCTS variant of the UCT strategy, starting from this node.
+     * Each action that is taken is applied to the given determinization, s.t. after the selection the determinization
+     * is in the state that belongs to the returned node.
+     * Actions that are legal in the determinization but were never tried are selected before any action is selected
+     * twice.
+     * <p>
+     * If addVirtualLoss is true, a virtual loss is added to every node that is visited (including this node).
+     *
+     * @param determinization        determinized game belonging to this node, is modified in place
+     * @param simulateAllDieOutcomes whether custom die rolls are used to simulate all outcomes of a die roll
+     * @param addVirtualLoss         whether virtual losses should be added (tree parallelization)
+     * @return the selected node and the selected action -> in the expansion phase the action can be taken from this node to get the new node
+     */
+    public Pair<InformationSetMctsNode, HeimlichAndCoAction> selection(HeimlichAndCo determinization, boolean simulateAllDieOutcomes, boolean addVirtualLoss) {
+        Random random = ThreadLocalRandom.current();
+        InformationSetMctsNode node = this;
+        while (true) {
+            if (addVirtualLoss) {
+                node.addVirtualLoss();
+            }
+            Set<HeimlichAndCoAction> possibleActions = determinization.getPossibleActions();
+            // this means that this is a terminal game state
+            if (possibleActions.isEmpty()) {
+                return new ImmutablePair<>(node, null);
+            }
+            HeimlichAndCoAction selectedAction;
+            if (simulateAllDieOutcomes && determinization.getCurrentPhase() == HeimlichAndCoPhase.DIE_ROLL_PHASE) {
+                possibleActions.remove(HeimlichAndCoDieRollAction.getRandomRollAction());
+                selectedAction = possibleActions.toArray(new HeimlichAndCoAction[1])[random.nextInt(possibleActions.size())];
+            } else {
+                selectedAction = node.selectAvailableAction(possibleActions, determinization.getCurrentPlayer() == playerId, random);
+            }
+            InformationSetMctsNode child = node.children.get(selectedAction);
+            if (child == null) {
+                return new ImmutablePair<>(node, selectedAction);
+            }
+            determinization.applyAction(selectedAction);
+            node = child;
+        }
+    }
+
+    /**
+     * Expands the current node with the given action, applies the action to the determinization and returns the
+     * created node.
+     * When action is null, returns this node (useful for doing MCTS when dealing with terminal nodes).
+     * <p>
+     * When another thread already expanded this node with the same action (only possible with tree parallelization),
+     * the node created by the other thread is returned.
+     *
+     * @param determinization determinized game belonging to this node, is modified in place
+     * @param action          to apply, must be null or valid in the determinization
+     * @return the node belonging to the game state after applying the action
+     */
+    public InformationSetMctsNode expansion(HeimlichAndCo determinization, HeimlichAndCoAction action) {
+        if (action == null) {
+            return this;
+        }
+        determinization.applyAction(action);
+        InformationSetMctsNode newNode = new InformationSetMctsNode(playerId, this);
+        InformationSetMctsNode existingNode = this.children.putIfAbsent(action, newNode);
+        return existingNode != null ? existingNode : newNode;
+    }
+
+    /**
+     * Selects the best action to take in the current node.
+     * This means taking the best action according to Q(s,a).
+     *
+     * @return the action with the best expected result.
+     */
+    public ImmutablePair<InformationSetMctsNode, HeimlichAndCoAction> getBestChild() {
+        if (children.isEmpty()) {
+            throw new IllegalStateException("Could not find best child, because there are no children.");
+        }
+        List<HeimlichAndCoAction> bestActions = new ArrayList<>();
+        double bestQsa = -1;
+        for (Map.Entry<HeimlichAndCoAction, InformationSetMctsNode> entry : children.entrySet()) {
+            double qSA = calculateQsaOfChild(entry.getKey());
+            if (qSA > bestQsa) {
+                bestQsa = qSA;
+                bestActions.clear();
+            }
+            if (qSA == bestQsa) {
+                bestActions.add(entry.getKey());
+            }
+        }
+        HeimlichAndCoAction selectedAction = bestActions.get(ThreadLocalRandom.current().nextInt(bestActions.size()));
+        return new ImmutablePair<>(this.children.get(selectedAction), selectedAction);
+    }
+
+    /**
+     * Calculates the Q(s,a) of this node and an action, i.e. #wins/ #playouts of the child.
+     * <p>
+     * Note: The action has to be contained in the children of this node.
+     *
+     * @param action for which to calculate the percentage
+     * @return expected percentage of wins when playing action in the current node
+     */
+    public double calculateQsaOfChild(HeimlichAndCoAction action) {
+        InformationSetMctsNode child = this.children.get(action);
+        if (child == null) {
+            throw new IllegalArgumentException("Action is not contained in children");
+        }
+        int childPlayouts = child.playouts;
+        if (childPlayouts == 0) { //can only happen when another thread has just expanded the child
+            return 0;
+        }
+        return ((double) child.wins) / childPlayouts;
+    }
+
+    public int getPlayouts() {
+        return this.playouts;
+    }
+
+    public int getWins() {
+        return this.wins;
+    }
+
+    /**
+     * Selects one of the given (legal) actions. The availability of all children belonging to one of the actions is
+     * increased. If there is an action that has not been tried yet, a random one of those is returned. Otherwise, the
+     * action with the maximum UCT value is returned (ties are broken randomly).
+     *
+     * @param possibleActions actions that are legal in the current determinization
+     * @param maximizing      whether the current player is the player the tree is built for
+     * @param random          used for breaking ties
+     * @return selected action
+     */
+    private HeimlichAndCoAction selectAvailableAction(Set<HeimlichAndCoAction> possibleActions, boolean maximizing, Random random) {
+        List<HeimlichAndCoAction> untriedActions = new ArrayList<>();
+        List<HeimlichAndCoAction> bestActions = new ArrayList<>();
+        double bestUct = Double.NEGATIVE_INFINITY;
+        for (HeimlichAndCoAction action : possibleActions) {
+            InformationSetMctsNode child = this.children.get(action);
+            if (child == null) {
+                untriedActions.add(action);
+                continue;
+            }
+            child.incrementAvailability();
+            if (!untriedActions.isEmpty()) {
+                continue; //untried actions are preferred anyway
+            }
+            double uct = child.calculateUCT(maximizing);
+            if (uct > bestUct) {
+                bestUct = uct;
+                bestActions.clear();
+            }
+            if (uct == bestUct) {
+                bestActions.add(action);
+            }
+        }
+        if (!untriedActions.isEmpty()) {
+            return untriedActions.get(random.nextInt(untriedActions.size()));
+        }
+        return bestActions.get(random.nextInt(bestActions.size()));
+    }
+
+    private synchronized void incrementAvailability() {
+        this.availability++;
+    }
+
+    /**
+     * Calculates the UCT score of the action leading to this node, using the availability of this node instead of the
+     * playouts of the parent.
+     * Virtual losses (tree parallelization) are counted as playouts that were lost for the player choosing the action.
+     *
+     * @param maximizing whether the player choosing the action is the player the tree is built for
+     * @return UCT score of this node
+     */
+    private double calculateUCT(boolean maximizing) {
+        int childVirtualLosses = this.virtualLosses;
+        int childPlayouts = this.playouts + childVirtualLosses;
+        if (childPlayouts == 0) { //another thread has just expanded this node, so it was not played out yet
+            return Double.MAX_VALUE;
+        }
+        double qSA;
+        if (maximizing) {
+            qSA = ((double) this.wins / childPlayouts);
+        } else {
+            //the other players do not want 'our' player to win, and their virtual losses are wins for 'our' player
+            qSA = ((double) (childPlayouts - this.wins - childVirtualLosses) / childPlayouts);
+        }
+        return qSA + C * Math.sqrt(Math.log(Math.max(this.availability, 1)) / childPlayouts);
+    }
+}
@@ -3,11 +3,20 @@ package heimlich_and_co_mcts_agent;
 import at.ac.tuwien.ifs.sge.util.pair.ImmutablePair;
 import at.ac.tuwien.ifs.sge.util.pair.Pair;
 import heimlich_and_co.HeimlichAndCo;
+import heimlich_and_co.HeimlichAndCoBoard;
 import heimlich_and_co.actions.HeimlichAndCoAction;
+import heimlich_and_co.actions.HeimlichAndCoAgentMoveAction;
 import heimlich_and_co.actions.HeimlichAndCoDieRollAction;
+import heimlich_and_co.actions.HeimlichAndCoSafeMoveAction;
+import heimlich_and_co.cards.HeimlichAndCoCard;
+import heimlich_and_co.enums.Agent;
 import heimlich_and_co.enums.HeimlichAndCoPhase;
+import heimlich_and_co_agent_core.ZobristHash;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 public class MctsNode {
 
@@ -17,13 +26,63 @@ public class MctsNode {
      */
     private static final double C = Math.sqrt(2);
 
+    /**
+     * Determines whether progressive widening is used in the card play phase, where playing cards can lead to a large
+     * number of possible actions.
+     * True means that a node in the card play phase only considers the first
+     * ceil(PROGRESSIVE_WIDENING_COEFFICIENT * playouts^PROGRESSIVE_WIDENING_EXPONENT) of its possible actions during
+     * selection, i.e. more actions are considered the more often the node was visited. The actions are ordered by a
+     * heuristic (see orderActions()), which is computed only once per node together with the possible actions.
+     * False means that all possible actions are considered on every visit.
+     */
+    private static final boolean USE_PROGRESSIVE_WIDENING = true;
+    private static final double PROGRESSIVE_WIDENING_COEFFICIENT = 2;
+    private static final double PROGRESSIVE_WIDENING_EXPONENT = 0.5;
+
+    /**
+     * Determines whether the tree is used as an MCTS-Solver.
+     * True means that the results of terminal nodes are proven, and proven results are propagated up the tree during
+     * backpropagation: a node is proven if the player to move has a child that is proven for them, or if all of its
+     * children are proven against them (chance nodes need all outcomes with the same result). Proven nodes are not
+     * played out again, children that are proven against the player to move are not selected, and a proven child is
+     * preferred (or avoided) when choosing the best child.
+     * Nodes in which the die is rolled randomly (i.e. without simulating all die outcomes) are never proven.
+     */
+    private static final boolean USE_SOLVER = true;
+
+    /**
+     * Determines whether RAVE (rapid action value estimation) is used for moving agents and the safe.
+     * True means that every iteration also updates the AMAF (all moves as first) statistics of the children of the
+     * nodes on its path: a child gets an AMAF playout if the action leading to it was played by the same player at
+     * any later point of the iteration (in the tree or in the playout), see MctsPath.backpropagation(). In UCT, Q(s,a)
+     * is blended with the AMAF value, which is available a lot earlier, as one playout updates many children.
+     * Only actions that recur in the same form during a game are used (agent and safe moves, see isRaveAction()).
+     */
+    private static final boolean USE_RAVE = true;
+    /**
+     * The weight of the AMAF value in UCT is beta = sqrt(RAVE_EQUIVALENCE / (3 * playouts + RAVE_EQUIVALENCE)), i.e.
+     * it is 1 without playouts, 1/2 after RAVE_EQUIVALENCE playouts, and goes to 0 with more playouts.
+     */
+    private static final double RAVE_EQUIVALENCE = 300;
+
+    /**
+     * value of provenResult if the result of the node is not proven
+     */
+    private static final int UNPROVEN = -1;
+
+    /**
+     * Estimated heap memory of a node including its game state, statistics and child structures (measured as about
+     * 3.3 to 4.2 KB per node). Only used for the metrics (see getMemoryEstimateBytes()).
+     */
+    private static final long ESTIMATED_BYTES_PER_NODE = 4096;
+
     /**
      * Saves the player id of the player for which the tree is build. I.e. the player for which the best action should
-     * be chosen in the end.
+     * be chosen in the end. The same for all nodes of a tree.
      */
-    private static int playerId;
+    private final int playerId;
     /**
-     * the depth of this node; 0 for root node
+     * the depth of this node; 0 for the node the tree was originally built from
      */
     private final int depth;
     /**
@@ -33,44 +92,84 @@ public class MctsNode {
     /**
      * All resulting child states that have been explored at least once.
      * A child node is reached by taking (applying) the action that is used as the key.
+     * <p>
+     * This is a concurrent map, s.t. multiple threads can expand the same tree (tree parallelization).
      */
     private final Map<HeimlichAndCoAction, MctsNode> children;
     /**
      * parent of this node; null for root node
+     * <p>
+     * Set to null by makeRoot() when the subtree of this node is reused as a new tree.
+     */
+    private MctsNode parent;
+    /**
+     * wins, playouts and virtual losses of this node; shared with all other nodes of the same game state (at the same
+     * depth) if a transposition table is used
+     */
+    private final NodeStatistics statistics;
+    /**
+     * used for finding nodes of the same game state when expanding; null if no transposition table is used
      */
-    private final MctsNode parent;
-    private final Random random;
+    private final MctsTranspositionTable transpositionTable;
     /**
-     * saves how many wins were achieved from this node
+     * The actions that can be selected in this node, computed once when the node is first selected (see
+     * getActions()); null before. In the card play phase the actions are ordered for progressive widening.
+     * <p>
+     * Written after childNodes, s.t. childNodes is initialized whenever this is not null.
      */
-    private int wins;
+    private volatile HeimlichAndCoAction[] actions;
     /**
-     * saves how many playouts were done from this node (or descendents of this node)
+     * The child reached by the action with the same index in actions, null if the action was not expanded yet.
+     * The children are contained in children as well, which is used for looking them up by action.
      */
-    private int playouts;
-    private final Comparator<HeimlichAndCoAction> actionComparatorUct = Comparator.comparingDouble(this::calculateUCT);
-    private final Comparator<HeimlichAndCoAction> actionComparatorQsa = Comparator.comparingDouble(this::calculateQsaOfChild);
+    private AtomicReferenceArray<MctsNode> childNodes;
+    /**
+     * The result (1 on win, 0 on loss) of the game from this node if both sides play perfectly, UNPROVEN if it is not
+     * known (see updateProvenResult()). Once proven, this does not change anymore.
+     */
+    private volatile int provenResult = UNPROVEN;
 
-    public MctsNode(int wins, int playouts, HeimlichAndCo game, MctsNode parent) {
-        this(game, parent);
-        this.wins = wins;
-        this.playouts = playouts;
+    /**
+     * Creates a root node.
+     *
+     * @param playerId the player for which the tree is built
+     * @param game     the game state of the root
+     */
+    public MctsNode(int playerId, HeimlichAndCo game) {
+        this(playerId, game, null);
     }
 
-    public MctsNode(HeimlichAndCo game, MctsNode parent) {
-        this.game = new HeimlichAndCo(game, false);
+    /**
+     * Creates a root node which uses the given transposition table for sharing statistics between nodes of the same
+     * game state.
+     *
+     * @param playerId           the player for which the tree is built
+     * @param game               the game state of the root
+     * @param transpositionTable the table to use; null if none is used
+     */
+    public MctsNode(int playerId, HeimlichAndCo game, MctsTranspositionTable transpositionTable) {
+        this(playerId, new HeimlichAndCo(game, false), null, new NodeStatistics(), transpositionTable);
+    }
+
+    /**
+     * @param playerId           the player for which the tree is built
+     * @param game               is used directly (not copied), must not be modified afterwards
+     * @param parent             parent of the node; null for root node
+     * @param statistics         of the node, may be shared with other nodes
+     * @param transpositionTable the table to use; null if none is used
+     */
+    private MctsNode(int playerId, HeimlichAndCo game, MctsNode parent, NodeStatistics statistics, MctsTranspositionTable transpositionTable) {
+        this.playerId = playerId;
+        this.game = game;
         this.parent = parent;
         if (parent != null) {
             this.depth = parent.depth + 1;
         } else {
             this.depth = 0;
         }
-        this.children = new HashMap<>();
-        this.random = new Random();
-    }
-
-    public static void setPlayerId(int playerId) {
-        MctsNode.playerId = playerId;
+        this.children = new ConcurrentHashMap<>();
+        this.statistics = statistics;
+        this.transpositionTable = transpositionTable;
     }
 
     /**
@@ -80,14 +179,160 @@ public class MctsNode {
      * @param win indicating whether the game was won or not (1 on win, 0 on loss).
      */
     public void backpropagation(int win) {
+        backpropagation(win, false);
+    }
+
+    /**
+     * Does backpropagation starting from the current node.
+     * Therefore, always increases playouts and increases wins depending on win.
+     * <p>
+     * If removeVirtualLoss is true, one virtual loss is removed from each node on the way to the root. This has to be
+     * used iff the virtual losses were added by addVirtualLoss() during selection (i.e. with tree parallelization).
+     *
+     * @param win               indicating whether the game was won or not (1 on win, 0 on loss).
+     * @param removeVirtualLoss whether a virtual loss should be removed from every node on the path
+     */
+    public void backpropagation(int win, boolean removeVirtualLoss) {
         if (win != 0 && win != 1) {
             throw new IllegalArgumentException("Win must be either 1 or 0");
         }
-        this.playouts++;
-        this.wins += win;
-        if (this.parent != null) {
-            this.parent.backpropagation(win);
+        for (MctsNode node = this; node != null; node = node.parent) {
+            node.update(win, removeVirtualLoss);
+        }
+        for (MctsNode node = this; node != null && node.updateProvenResult(); node = node.parent) {
+            //the result of the parent can only become proven if the result of the child is proven
+        }
+    }
+
+    /**
+     * Updates the statistics of this node only (see MctsPath.backpropagation()).
+     */
+    void update(int win, boolean removeVirtualLoss) {
+        this.statistics.update(win, removeVirtualLoss);
+    }
+
+    /**
+     * Tries to prove the result of this node (if USE_SOLVER is true), see USE_SOLVER for the rules. A terminal node is
+     * proven with the result of the game. Only the children of this node are checked, i.e. this has to be called for
+     * the nodes bottom-up (see MctsPath.backpropagation()).
+     *
+     * @return whether the result of this node is proven
+     */
+    boolean updateProvenResult() {
+        if (!USE_SOLVER) {
+            return false;
+        }
+        if (provenResult != UNPROVEN) {
+            return true;
+        }
+        if (game.isGameOver()) {
+            provenResult = PlayoutEngine.getResult(game, playerId);
+            return true;
+        }
+        HeimlichAndCoAction[] actions = this.actions;
+        if (actions == null || actions.length == 0) {
+            return false;
+        }
+        boolean chanceNode = game.getCurrentPhase() == HeimlichAndCoPhase.DIE_ROLL_PHASE;
+        if (chanceNode && children.containsKey(HeimlichAndCoDieRollAction.getRandomRollAction())) {
+            //the child of the random roll is only one of the possible outcomes
+            return false;
         }
+        int goodResult = game.getCurrentPlayer() == playerId ? 1 : 0;
+        int commonResult = UNPROVEN;
+        boolean allProven = true;
+        for (int i = 0; i < actions.length; i++) {
+            MctsNode child = childNodes.get(i);
+            int childResult = child == null ? UNPROVEN : child.provenResult;
+            if (chanceNode) {
+                if (childResult == UNPROVEN || commonResult != UNPROVEN && childResult != commonResult) {
+                    return false;
+                }
+                commonResult = childResult;
+            } else if (childResult == goodResult) {
+                provenResult = goodResult;
+                return true;
+            } else if (childResult == UNPROVEN) {
+                allProven = false;
+            }
+        }
+        if (!allProven) {
+            return false;
+        }
+        provenResult = chanceNode ? commonResult : 1 - goodResult;
+        return true;
+    }
+
+    /**
+     * Updates the AMAF statistics of the children of this node for one iteration (see USE_RAVE): a child is updated
+     * if it is the next node of the iteration, or if the action leading to it is contained in laterActions.
+     *
+     * @param next         the next node on the path of the iteration, null if this is the last node
+     * @param laterActions the RAVE actions that were played by the current player of this node later in the iteration
+     * @param win          1 on win, 0 on loss
+     * @return the action leading to next, or null if it is not a RAVE action (see isRaveAction())
+     */
+    HeimlichAndCoAction updateAmafOfChildren(MctsNode next, Set<HeimlichAndCoAction> laterActions, int win) {
+        HeimlichAndCoAction[] actions = this.actions;
+        HeimlichAndCoPhase phase = game.getCurrentPhase();
+        if (actions == null || phase != HeimlichAndCoPhase.AGENT_MOVE_PHASE && phase != HeimlichAndCoPhase.SAFE_MOVE_PHASE) {
+            return null;
+        }
+        HeimlichAndCoAction nextAction = null;
+        for (int i = 0; i < actions.length; i++) {
+            MctsNode child = childNodes.get(i);
+            if (child == null) {
+                continue;
+            }
+            if (child == next) {
+                nextAction = actions[i];
+                child.statistics.updateAmaf(win);
+            } else if (!laterActions.isEmpty() && laterActions.contains(actions[i])) {
+                child.statistics.updateAmaf(win);
+            }
+        }
+        return nextAction;
+    }
+
+    /**
+     * @return whether the given action is used for RAVE, i.e. moving agents or the safe. Other actions either do not
+     * recur (cards) or are no decision (die rolls); equals() of card actions cannot even compare all of them.
+     */
+    static boolean isRaveAction(HeimlichAndCoAction action) {
+        return action instanceof HeimlichAndCoAgentMoveAction || action instanceof HeimlichAndCoSafeMoveAction;
+    }
+
+    /**
+     * @return whether RAVE is used, i.e. whether the actions of the iterations have to be recorded (see USE_RAVE)
+     */
+    static boolean isRaveUsed() {
+        return USE_RAVE;
+    }
+
+    int getCurrentPlayer() {
+        return game.getCurrentPlayer();
+    }
+
+    /**
+     * @return whether the result of this node is proven (see USE_SOLVER)
+     */
+    public boolean isProven() {
+        return provenResult != UNPROVEN;
+    }
+
+    /**
+     * @return the proven result of this node (1 on win, 0 on loss), only valid if isProven() is true
+     */
+    public int getProvenResult() {
+        return provenResult;
+    }
+
+    /**
+     * Adds a virtual loss to this node. Has to be undone by calling backpropagation(win, true) on this node or on one
+     * of its descendants.
+     */
+    public void addVirtualLoss() {
+        this.statistics.addVirtualLoss();
     }
 
     /**
@@ -101,17 +346,32 @@ public class MctsNode {
      * @return expected percentage of wins when playing action in the current state
      */
     public double calculateQsaOfChild(HeimlichAndCoAction action) {
-        if (!this.children.containsKey(action)) {
+        MctsNode child = this.children.get(action);
+        if (child == null) {
             throw new IllegalArgumentException("Action is not contained in children");
         }
-        return ((double) children.get(action).wins) / children.get(action).playouts;
+        return child.getQsa();
+    }
+
+    /**
+     * @return wins/playouts of this node, 0 if it was not played out yet
+     */
+    private double getQsa() {
+        int playouts = this.statistics.getPlayouts();
+        if (playouts == 0) { //can only happen when another thread has just expanded the node
+            return 0;
+        }
+        return ((double) this.statistics.getWins()) / playouts;
     }
 
     /**
      * Expands the current node with the given action and returns the created node.
-     * Action must be null or a valid action that was not used for expansion with this node already.
+     * Action must be null or a valid action.
      * <p>
      * When action is null, returns this node (useful for doing MCTS when dealing with terminal nodes).
+     * <p>
+     * When another thread already expanded this node with the same action (only possible with tree parallelization),
+     * the node created by the other thread is returned.
      *
      * @param action to apply
      * @return Game node that
@@ -120,17 +380,51 @@ public class MctsNode {
         if (action == null) {
             return this;
         }
-        if (!game.isValidAction(action)) {
-            throw new IllegalArgumentException("The given action must be valid.");
+        MctsNode existingNode = this.children.get(action);
+        if (existingNode != null) {
+            return existingNode;
+        }
+        //doAction() throws an IllegalArgumentException if the action is not valid
+        MctsNode newNode = createChild(game.doAction(action));
+        existingNode = this.children.putIfAbsent(action, newNode);
+        if (existingNode != null) {
+            return existingNode;
         }
-        if (this.children.containsKey(action)) {
-            throw new IllegalArgumentException("The current node was already expanded with the given action");
+        HeimlichAndCoAction[] actions = this.actions;
+        if (actions != null) {
+            //the action usually is the same object as in actions, as it was returned by selection()
+            for (int i = 0; i < actions.length; i++) {
+                if (actions[i] == action) {
+                    childNodes.set(i, newNode);
+                    break;
+                }
+            }
         }
-        MctsNode newNode = new MctsNode(game.doAction(action), this);
-        this.children.put(action, newNode);
         return newNode;
     }
 
+    /**
+     * Creates a child node for the given game state (which is not copied again).
+     * If a transposition table is used and it contains the game state at the depth of the child, the child shares the
+     * statistics and the game state of the table entry. Otherwise, the child is added to the table.
+     *
+     * @param childGame game state of the child, must not be modified afterwards
+     * @return the new child node
+     */
+    private MctsNode createChild(HeimlichAndCo childGame) {
+        if (transpositionTable == null) {
+            return new MctsNode(playerId, childGame, this, new NodeStatistics(), null);
+        }
+        long hash = ZobristHash.withDepth(ZobristHash.hash(childGame), this.depth + 1);
+        MctsTranspositionTable.Entry entry = transpositionTable.get(hash);
+        if (entry != null) {
+            return new MctsNode(playerId, entry.getGame(), this, entry.getStatistics(), transpositionTable);
+        }
+        MctsNode child = new MctsNode(playerId, childGame, this, new NodeStatistics(), transpositionTable);
+        transpositionTable.put(hash, child.statistics, childGame);
+        return child;
+    }
+
     /**
      * selects a node with UCT strategy
      * during the first round checks all possible actions before selecting an action twice
@@ -138,117 +432,462 @@ public class MctsNode {
      * @return this node and the selected action -> in the expansion phase the action can be taken from this node to get the new node
      */
     public Pair<MctsNode, HeimlichAndCoAction> selection(boolean simulateAllDiceOutcomes) {
-        Set<HeimlichAndCoAction> possibleActions = game.getPossibleActions();
-        // this means that this is a terminal game state
-        if (possibleActions.isEmpty()) {
-            return new ImmutablePair<>(this, null);
-        }
-        HeimlichAndCoAction selectedAction;
-        if (simulateAllDiceOutcomes && game.getCurrentPhase() == HeimlichAndCoPhase.DIE_ROLL_PHASE) {
-            possibleActions.remove(HeimlichAndCoDieRollAction.getRandomRollAction());
-            selectedAction = possibleActions.toArray(new HeimlichAndCoAction[1])[random.nextInt(possibleActions.size())];
-        } else {
-            List<HeimlichAndCoAction> maximumValuedActions = getMaximumValuedActions(possibleActions, this.actionComparatorUct);
-            selectedAction = maximumValuedActions.get(random.nextInt(maximumValuedActions.size()));
+        return selection(simulateAllDiceOutcomes, false);
+    }
+
+    /**
+     * selects a node with UCT strategy
+     * during the first round checks all possible actions before selecting an action twice
+     * <p>
+     * If addVirtualLoss is true, a virtual loss is added to every node that is visited (including this node). This is
+     * used for tree parallelization, s.t. other threads do not all select the same path.
+     *
+     * @return this node and the selected action -> in the expansion phase the action can be taken from this node to get the new node
+     */
+    public Pair<MctsNode, HeimlichAndCoAction> selection(boolean simulateAllDiceOutcomes, boolean addVirtualLoss) {
+        return selection(simulateAllDiceOutcomes, addVirtualLoss, ThreadLocalRandom.current());
+    }
+
+    /**
+     * selects a node with UCT strategy
+     * during the first round checks all possible actions before selecting an action twice
+     * <p>
+     * If addVirtualLoss is true, a virtual loss is added to every node that is visited (including this node). This is
+     * used for tree parallelization, s.t. other threads do not all select the same path.
+     *
+     * @param random used for breaking ties and selecting die roll outcomes, should be reused by the caller
+     * @return this node and the selected action -> in the expansion phase the action can be taken from this node to get the new node
+     */
+    public Pair<MctsNode, HeimlichAndCoAction> selection(boolean simulateAllDiceOutcomes, boolean addVirtualLoss, Random random) {
+        return selection(simulateAllDiceOutcomes, addVirtualLoss, random, new MctsPath());
+    }
+
+    /**
+     * selects a node with UCT strategy
+     * during the first round checks all possible actions before selecting an action twice
+     * <p>
+     * If addVirtualLoss is true, a virtual loss is added to every node that is visited (including this node). This is
+     * used for tree parallelization, s.t. other threads do not all select the same path.
+     * <p>
+     * The selection is done in a loop (not recursively), and the visited nodes (from this node to the returned node) are
+     * recorded in the given path, which is cleared first. The node created in the expansion has to be added to the
+     * path by the caller, then MctsPath.backpropagation() can be used.
+     *
+     * @param random used for breaking ties and selecting die roll outcomes, should be reused by the caller
+     * @param path   is filled with the visited nodes, should be reused by the caller
+     * @return the selected node and action -> in the expansion phase the action can be taken from this node to get the new node
+     */
+    public Pair<MctsNode, HeimlichAndCoAction> selection(boolean simulateAllDiceOutcomes, boolean addVirtualLoss, Random random, MctsPath path) {
+        path.clear();
+        MctsNode node = this;
+        while (true) {
+            path.add(node);
+            if (addVirtualLoss) {
+                node.addVirtualLoss();
+            }
+            // the result of a proven node is known, it is neither expanded nor played out
+            if (node.provenResult != UNPROVEN) {
+                return new ImmutablePair<>(node, null);
+            }
+            HeimlichAndCoAction[] actions = node.getActions(simulateAllDiceOutcomes);
+            // this means that this is a terminal game state
+            if (actions.length == 0) {
+                return new ImmutablePair<>(node, null);
+            }
+            int selectedIndex;
+            if (simulateAllDiceOutcomes && node.game.getCurrentPhase() == HeimlichAndCoPhase.DIE_ROLL_PHASE) {
+                selectedIndex = random.nextInt(actions.length);
+            } else {
+                selectedIndex = node.selectChild(actions.length, random);
+            }
+
+            MctsNode child = node.childNodes.get(selectedIndex);
+            if (child == null) {
+                return new ImmutablePair<>(node, actions[selectedIndex]);
+            }
+            node = child;
         }
+    }
 
-        if (this.children.containsKey(selectedAction)) {
-            return this.children.get(selectedAction).selection(simulateAllDiceOutcomes);
+    /**
+     * Selects the child with the highest UCT score (see calculateUCT()) in a single pass over the actions. Ties are
+     * broken uniformly at random.
+     * <p>
+     * With progressive widening (in the card play phase), only the first
+     * ceil(PROGRESSIVE_WIDENING_COEFFICIENT * playouts^PROGRESSIVE_WIDENING_EXPONENT) actions are considered.
+     * Children that are proven against the current player are skipped; if all considered actions are skipped, the
+     * next actions are considered as well.
+     *
+     * @param numberOfActions the number of actions of this node
+     * @param random          used for breaking ties
+     * @return the index of the selected action
+     */
+    private int selectChild(int numberOfActions, Random random) {
+        int consideredActions = numberOfActions;
+        if (USE_PROGRESSIVE_WIDENING && game.getCurrentPhase() == HeimlichAndCoPhase.CARD_PLAY_PHASE) {
+            int playouts = Math.max(1, this.statistics.getPlayouts());
+            int widenedActions = (int) Math.ceil(PROGRESSIVE_WIDENING_COEFFICIENT * Math.pow(playouts, PROGRESSIVE_WIDENING_EXPONENT));
+            consideredActions = Math.min(numberOfActions, widenedActions);
+        }
+        boolean maximizing = this.game.getCurrentPlayer() == this.playerId;
+        int badResult = maximizing ? 0 : 1;
+        double logNs = Math.log(this.statistics.getPlayouts() + this.statistics.getVirtualLosses());
+        double bestUct = Double.NEGATIVE_INFINITY;
+        int bestIndex = 0;
+        int ties = 0;
+        for (int i = 0; i < numberOfActions && (i < consideredActions || ties == 0); i++) {
+            MctsNode child = this.childNodes.get(i);
+            if (USE_SOLVER && child != null && child.provenResult == badResult) {
+                continue;
+            }
+            double uct = child == null ? Double.MAX_VALUE : child.calculateUCT(maximizing, logNs);
+            if (uct > bestUct) {
+                bestUct = uct;
+                bestIndex = i;
+                ties = 1;
+            } else if (uct == bestUct && random.nextInt(++ties) == 0) {
+                bestIndex = i;
+            }
         }
-        return new ImmutablePair<>(this, selectedAction);
+        return bestIndex;
+    }
+
+    /**
+     * Returns the actions that can be selected in this node, which are computed only once per node.
+     * <p>
+     * If simulateAllDiceOutcomes is true, the random roll is not contained in the die roll phase (only the custom die
+     * rolls). With progressive widening, the actions of the card play phase are ordered by orderActions().
+     * Children that were expanded before the actions were computed are added to childNodes.
+     *
+     * @return the actions, must not be modified
+     */
+    private HeimlichAndCoAction[] getActions(boolean simulateAllDiceOutcomes) {
+        HeimlichAndCoAction[] actions = this.actions;
+        if (actions != null) {
+            return actions;
+        }
+        synchronized (this) {
+            if (this.actions != null) {
+                return this.actions;
+            }
+            Set<HeimlichAndCoAction> possibleActions = game.getPossibleActions();
+            if (simulateAllDiceOutcomes && game.getCurrentPhase() == HeimlichAndCoPhase.DIE_ROLL_PHASE) {
+                possibleActions.remove(HeimlichAndCoDieRollAction.getRandomRollAction());
+            }
+            if (USE_PROGRESSIVE_WIDENING && game.getCurrentPhase() == HeimlichAndCoPhase.CARD_PLAY_PHASE) {
+                actions = orderActions(possibleActions);
+            } else {
+                actions = possibleActions.toArray(new HeimlichAndCoAction[0]);
+            }
+            AtomicReferenceArray<MctsNode> childNodes = new AtomicReferenceArray<>(actions.length);
+            if (!children.isEmpty()) {
+                for (int i = 0; i < actions.length; i++) {
+                    childNodes.set(i, children.get(actions[i]));
+                }
+            }
+            this.childNodes = childNodes;
+            this.actions = actions;
+            return actions;
+        }
+    }
+
+    /**
+     * Orders the given actions s.t. the most promising actions for the current player come first.
+     * <p>
+     * Each action is applied to a copy of the board only (which is a lot cheaper than doAction()), and the resulting
+     * board is rated for the agent of the current player (see BoardHeuristics.rateBoard()). Actions with the same
+     * rating keep an arbitrary but fixed order.
+     * If the agent of the current player is not known, the actions are not ordered.
+     *
+     * @param actions the possible actions of this node
+     * @return a new array with the ordered actions
+     */
+    private HeimlichAndCoAction[] orderActions(Set<HeimlichAndCoAction> actions) {
+        HeimlichAndCoAction[] actionArray = actions.toArray(new HeimlichAndCoAction[0]);
+        Agent playerAgent = game.getPlayersToAgentsMap().get(game.getCurrentPlayer());
+        if (playerAgent == null) {
+            return actionArray;
+        }
+        //sorting indices instead of the actions, as equals() of the skip card action cannot compare it to other card actions
+        int[] ratings = new int[actionArray.length];
+        Integer[] indices = new Integer[actionArray.length];
+        for (int i = 0; i < actionArray.length; i++) {
+            ratings[i] = BoardHeuristics.rateBoard(BoardHeuristics.applyToCopy(game.getBoard(), actionArray[i]), playerAgent);
+            indices[i] = i;
+        }
+        Arrays.sort(indices, (a, b) -> Integer.compare(ratings[b], ratings[a]));
+        HeimlichAndCoAction[] orderedActions = new HeimlichAndCoAction[actionArray.length];
+        for (int i = 0; i < indices.length; i++) {
+            orderedActions[i] = actionArray[indices[i]];
+        }
+        return orderedActions;
     }
 
     /**
      * Selects the best action to take in the current node.
-     * This means taking the best action according to Q(s,a).
+     * This means taking the best action according to Q(s,a). A child that is proven to be won is always taken, and a
+     * child that is proven to be lost only if all children are.
      *
      * @return the action with the best expected result.
      */
     public ImmutablePair<MctsNode, HeimlichAndCoAction> getBestChild() {
-        Set<HeimlichAndCoAction> possibleActions = children.keySet();
-        if (possibleActions.isEmpty()) {
+        if (children.isEmpty()) {
             throw new IllegalStateException("Could not find best child, because there are no children.");
         }
-        List<HeimlichAndCoAction> maximumValuedActions = getMaximumValuedActions(possibleActions, this.actionComparatorQsa);
-        HeimlichAndCoAction selectedAction = maximumValuedActions.get(random.nextInt(maximumValuedActions.size()));
-        return new ImmutablePair<>(this.children.get(selectedAction), selectedAction);
+        Random random = ThreadLocalRandom.current();
+        Map.Entry<HeimlichAndCoAction, MctsNode> bestEntry = null;
+        double bestQsa = Double.NEGATIVE_INFINITY;
+        int ties = 0;
+        for (Map.Entry<HeimlichAndCoAction, MctsNode> entry : children.entrySet()) {
+            double qsa = entry.getValue().getDecisionValue();
+            if (qsa > bestQsa) {
+                bestQsa = qsa;
+                bestEntry = entry;
+                ties = 1;
+            } else if (qsa == bestQsa && random.nextInt(++ties) == 0) {
+                bestEntry = entry;
+            }
+        }
+        return new ImmutablePair<>(bestEntry.getValue(), bestEntry.getKey());
     }
 
-    public HeimlichAndCo getGame() {
-        return new HeimlichAndCo(game);
+    /**
+     * @return Q(s,a) of this node, positive infinity if it is proven to be won, or Q(s,a) - 2 if it is proven to be lost
+     * (i.e. less than any unproven node, but lost nodes are still ordered by Q(s,a), as the other players may not
+     * play perfectly)
+     */
+    private double getDecisionValue() {
+        int provenResult = this.provenResult;
+        if (provenResult == UNPROVEN) {
+            return getQsa();
+        }
+        return provenResult == 1 ? Double.POSITIVE_INFINITY : getQsa() - 2;
     }
 
-    public int getPlayouts() {
-        return this.playouts;
+    /**
+     * Checks whether the best child (see getBestChild()) can still be overtaken by another child if the given number
+     * of playouts is done from this node.
+     * <p>
+     * This is checked for the worst case: all remaining playouts are won in one of the other children, or are all lost
+     * in the best child. As long as an action was not expanded yet, the best child can always be overtaken.
+     * If the result of this node is proven, the best child cannot change anymore.
+     *
+     * @param remainingPlayouts the number of playouts that can still be done
+     * @return whether the best child can still change
+     */
+    public boolean canBestChildBeOvertaken(long remainingPlayouts) {
+        if (provenResult != UNPROVEN) {
+            return false;
+        }
+        HeimlichAndCoAction[] actions = this.actions;
+        if (children.size() < (actions != null ? actions.length : game.getPossibleActions().size())) {
+            return true;
+        }
+        double bestQsa = Double.NEGATIVE_INFINITY;
+        MctsNode bestChild = null;
+        for (MctsNode child : children.values()) {
+            double qsa = child.getQsa();
+            if (qsa > bestQsa) {
+                bestQsa = qsa;
+                bestChild = child;
+            }
+        }
+        double worstBestQsa = (double) bestChild.statistics.getWins() / (bestChild.statistics.getPlayouts() + remainingPlayouts);
+        for (MctsNode child : children.values()) {
+            if (child != bestChild) {
+                double bestOtherQsa = (double) (child.statistics.getWins() + remainingPlayouts) / (child.statistics.getPlayouts() + remainingPlayouts);
+                if (bestOtherQsa >= worstBestQsa) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
-    public int getWins() {
-        return this.wins;
+    /**
+     * @return an unmodifiable view of the children of this node (e.g. for merging the results of multiple trees)
+     */
+    public Map<HeimlichAndCoAction, MctsNode> getChildren() {
+        return Collections.unmodifiableMap(children);
     }
 
     /**
-     * Calculates the UCT score of an action.
-     * In the case that no playout has been done yet for an action, the maximum Double value is returned. This is in line with exploring
-     * each state/action at least once before exploring a state/action twice.
+     * Follows the given actions (played one after another starting from the state of this node) down the tree.
      * <p>
-     * Note: The action has to be a valid action in the current game state.
+     * Random die rolls are resolved to the custom die roll child that is consistent with what happened afterwards,
+     * i.e. the child in which the next action is valid (preferring children where that action was already explored),
+     * or, if the die roll is the last action, the child with the given last die roll.
      *
-     * @param action for which UCT score should be calculated
-     * @return UCT score of action
+     * @param actions     actions that were played since the state of this node
+     * @param lastDieRoll the last die roll of the observed game
+     * @return the node reached after all actions, or null if one of the actions was never explored
      */
-    private double calculateUCT(HeimlichAndCoAction action) {
-        if (action == null || !this.game.isValidAction(action)) {
-            throw new IllegalArgumentException("Action must not be null, and allowed in the current state");
-        }
-        if (this.children.isEmpty()) {
-            return Double.MAX_VALUE;
+    public MctsNode findDescendant(List<HeimlichAndCoAction> actions, int lastDieRoll) {
+        MctsNode node = this;
+        for (int i = 0; i < actions.size() && node != null; i++) {
+            HeimlichAndCoAction action = actions.get(i);
+            MctsNode child = node.children.get(action);
+            if (child == null && action.equals(HeimlichAndCoDieRollAction.getRandomRollAction())) {
+                HeimlichAndCoAction nextAction = i + 1 < actions.size() ? actions.get(i + 1) : null;
+                for (MctsNode dieRollChild : node.children.values()) {
+                    boolean consistent = nextAction != null
+                            ? dieRollChild.game.isValidAction(nextAction)
+                            : dieRollChild.game.getBoard().getLastDieRoll() == lastDieRoll;
+                    if (consistent && (child == null || nextAction != null && dieRollChild.children.containsKey(nextAction))) {
+                        child = dieRollChild;
+                    }
+                }
+            }
+            node = child;
         }
+        return node;
+    }
 
-        if (this.children.containsKey(action)) {
-            MctsNode child = this.children.get(action);
-            if (child.playouts == 0 || this.playouts == 0) { //this should never happen
-                throw new IllegalStateException("Illegal 0 value in calculateUCT");
+    /**
+     * Checks whether the game state of this node matches the observed game, regarding everything the observing
+     * player knows: the phase, the current player, the board (positions, scores, safe and last die roll) and the
+     * cards of the observing player.
+     *
+     * @param observedGame the game as it was observed by the player
+     * @param playerId     the observing player
+     * @return true iff the state of this node is consistent with the observed game
+     */
+    public boolean matches(HeimlichAndCo observedGame, int playerId) {
+        HeimlichAndCoBoard board = this.game.getBoard();
+        HeimlichAndCoBoard observedBoard = observedGame.getBoard();
+        if (this.game.getCurrentPhase() != observedGame.getCurrentPhase()
+                || this.game.getCurrentPlayer() != observedGame.getCurrentPlayer()
+                || !board.getAgentsPositions().equals(observedBoard.getAgentsPositions())
+                || !board.getScores().equals(observedBoard.getScores())
+                || board.getSafePosition() != observedBoard.getSafePosition()
+                || board.getLastDieRoll() != observedBoard.getLastDieRoll()) {
+            return false;
+        }
+        if (observedGame.isWithCards()) {
+            List<HeimlichAndCoCard> cards = new ArrayList<>(this.game.getCards().get(playerId));
+            List<HeimlichAndCoCard> observedCards = observedGame.getCards().get(playerId);
+            for (HeimlichAndCoCard card : observedCards) {
+                if (!cards.remove(card)) {
+                    return false;
+                }
             }
-            double qSA;
-            if (this.game.getCurrentPlayer() == MctsNode.playerId) {
-                qSA = ((double) child.wins / child.playouts);
-            } else {
-                //if the current player is not the player we are maximizing for, we have to 'invert' the wins, as the
-                //other players of course do not want 'our' player to win. Meaning, they of course don't take the action
-                //which benefits 'our' player
-                qSA = ((double) (child.playouts - child.wins) / child.playouts);
+            return cards.isEmpty() && this.game.getCardStack().count() == observedGame.getCardStack().count();
+        }
+        return true;
+    }
+
+    /**
+     * Detaches this node from its parent, s.t. its subtree can be used as a new tree (and the rest of the old tree can
+     * be garbage collected).
+     */
+    public void makeRoot() {
+        this.parent = null;
+    }
+
+    /**
+     * Traverses the subtree in a loop (not recursively).
+     *
+     * @return the number of nodes in the subtree rooted at this node (including this node)
+     */
+    public int getNodeCount() {
+        int nodeCount = 0;
+        Deque<MctsNode> stack = new ArrayDeque<>();
+        stack.push(this);
+        while (!stack.isEmpty()) {
+            MctsNode node = stack.pop();
+            nodeCount++;
+            for (MctsNode child : node.children.values()) {
+                stack.push(child);
             }
+        }
+        return nodeCount;
+    }
 
-            double nS = this.playouts;
-            double nSA = child.playouts;
-            return qSA + C * Math.sqrt(Math.log(nS) / nSA);
+    /**
+     * Traverses the subtree in a loop (not recursively).
+     *
+     * @return the depth of the deepest node in the subtree rooted at this node, relative to this node
+     */
+    public int getMaxDepth() {
+        int maxDepth = this.depth;
+        Deque<MctsNode> stack = new ArrayDeque<>();
+        stack.push(this);
+        while (!stack.isEmpty()) {
+            MctsNode node = stack.pop();
+            maxDepth = Math.max(maxDepth, node.depth);
+            for (MctsNode child : node.children.values()) {
+                stack.push(child);
+            }
         }
-        return Double.MAX_VALUE;
+        return maxDepth - this.depth;
+    }
+
+    /**
+     * @param nodeCount the number of nodes of a tree (see getNodeCount())
+     * @return an estimate of the heap memory used by a tree with the given number of nodes
+     */
+    public static long getMemoryEstimateBytes(int nodeCount) {
+        return nodeCount * ESTIMATED_BYTES_PER_NODE;
+    }
+
+    public HeimlichAndCo getGame() {
+        return new HeimlichAndCo(game);
     }
 
     /**
-     * Gets the actions which have the maximum value according to some comparator. If multiple actions have the same
-     * (maximum) value, all of them will be contained in the returned list.
-     * This method runs in O(n) where n is the number of actions
+     * @return a copy of the game state that does not validate applied actions (for doing playouts)
+     */
+    public PlayoutGame getPlayoutGame() {
+        return new PlayoutGame(game);
+    }
+
+    public int getPlayouts() {
+        return this.statistics.getPlayouts();
+    }
+
+    public int getWins() {
+        return this.statistics.getWins();
+    }
+
+    /**
+     * Calculates the UCT score of this node as a child of its parent.
+     * In the case that no playout has been done yet for this node, the maximum Double value is returned. This is in
+     * line with exploring each state/action at least once before exploring a state/action twice.
+     * <p>
+     * Virtual losses (tree parallelization) are counted as playouts that were lost for the player choosing the action.
+     * With USE_RAVE, Q(s,a) is blended with the AMAF value of this node (see RAVE_EQUIVALENCE).
      *
-     * @param actions    possible actions in the current game state
-     * @param comparator comparator which should be used to compare two actions (e.g. tree policy like UCT)
-     * @return a List of actions which have the maximum value when compared with the given Comparator
+     * @param maximizing whether the player choosing the action in the parent is the player the tree is built for
+     * @param logNs      the natural logarithm of the playouts (including virtual losses) of the parent
+     * @return UCT score of this node
      */
-    private static List<HeimlichAndCoAction> getMaximumValuedActions(Set<HeimlichAndCoAction> actions, Comparator<HeimlichAndCoAction> comparator) {
-        List<HeimlichAndCoAction> selectedActions = new LinkedList<>();
-        for (HeimlichAndCoAction action : actions) {
-            if (selectedActions.isEmpty()) { //this is only true in the first iteration
-                selectedActions.add(action);
-            } else if (comparator.compare(selectedActions.get(0), action) == 0) { //the current action is equal
-                selectedActions.add(action);
-            } else if (comparator.compare(selectedActions.get(0), action) < 0) { //the current action has a larger value
-                //i.e. clear the list and add the current action to it
-                selectedActions = new LinkedList<>();
-                selectedActions.add(action);
+    private double calculateUCT(boolean maximizing, double logNs) {
+        int virtualLosses = this.statistics.getVirtualLosses();
+        int playouts = this.statistics.getPlayouts() + virtualLosses;
+        if (playouts == 0) { //another thread has just expanded the child, so it was not played out yet
+            return Double.MAX_VALUE;
+        }
+        int wins = this.statistics.getWins();
+        double qSA;
+        if (maximizing) {
+            qSA = ((double) wins / playouts);
+        } else {
+            //if the current player is not the player we are maximizing for, we have to 'invert' the wins, as the
+            //other players of course do not want 'our' player to win. Meaning, they of course don't take the action
+            //which benefits 'our' player
+            //virtual losses of the other players are wins for 'our' player
+            qSA = ((double) (playouts - wins - virtualLosses) / playouts);
+        }
+        int amafPlayouts = this.statistics.getAmafPlayouts();
+        if (USE_RAVE && amafPlayouts > 0) {
+            double amafQsa = (double) this.statistics.getAmafWins() / amafPlayouts;
+            if (!maximizing) {
+                amafQsa = 1 - amafQsa;
             }
+            double beta = Math.sqrt(RAVE_EQUIVALENCE / (3 * playouts + RAVE_EQUIVALENCE));
+            qSA = (1 - beta) * qSA + beta * amafQsa;
         }
-        return selectedActions;
+        return qSA + C * Math.sqrt(logNs / playouts);
     }
 
 }
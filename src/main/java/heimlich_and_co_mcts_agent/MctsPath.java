@@ -0,0 +1,156 @@
+package heimlich_and_co_mcts_agent;
+
+import heimlich_and_co.actions.HeimlichAndCoAction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * The nodes visited in one MCTS iteration, from the node where the selection started down to the node from where the
+ * playout is done. The path is recorded during selection (see MctsNode.selection()) and expansion, s.t. the
+ * backpropagation can update exactly these nodes in a loop, instead of recursively following the parent pointers.
+ * <p>
+ * With RAVE (see MctsNode.USE_RAVE), the actions of the playout are recorded as well (see getPlayoutListener()), s.t.
+ * the backpropagation can update the AMAF statistics.
+ * <p>
+ * A path is meant to be reused for all iterations of one thread, s.t. no memory is allocated per iteration. It is not
+ * thread-safe.
+ */
+public class MctsPath {
+
+    /**
+     * Number of nodes the path can hold initially. The array grows by doubling its capacity when it is full.
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    private MctsNode[] nodes = new MctsNode[INITIAL_CAPACITY];
+    private int size;
+    /**
+     * the RAVE actions of the playout (see MctsNode.isRaveAction()) and the players who played them
+     */
+    private HeimlichAndCoAction[] playoutActions = new HeimlichAndCoAction[INITIAL_CAPACITY];
+    private int[] playoutPlayers = new int[INITIAL_CAPACITY];
+    private int playoutSize;
+    /**
+     * the actions played later in the iteration, indexed by player; only used during the backpropagation
+     */
+    private final List<Set<HeimlichAndCoAction>> laterActions = new ArrayList<>();
+    private final ObjIntConsumer<HeimlichAndCoAction> playoutListener = MctsNode.isRaveUsed() ? this::addPlayoutAction : null;
+
+    /**
+     * Removes all nodes from the path (the array is kept).
+     */
+    void clear() {
+        Arrays.fill(nodes, 0, size, null);
+        size = 0;
+        Arrays.fill(playoutActions, 0, playoutSize, null);
+        playoutSize = 0;
+    }
+
+    /**
+     * Appends a node to the end of the path, it has to be a child of the current last node.
+     */
+    void add(MctsNode node) {
+        if (size == nodes.length) {
+            nodes = Arrays.copyOf(nodes, nodes.length * 2);
+        }
+        nodes[size++] = node;
+    }
+
+    /**
+     * @return receives the actions of the playout from the last node of the path (see PlayoutEngine.playout()), null if
+     * they are not needed (i.e. RAVE is not used)
+     */
+    public ObjIntConsumer<HeimlichAndCoAction> getPlayoutListener() {
+        return playoutListener;
+    }
+
+    /**
+     * Records an action of the playout, if it is a RAVE action.
+     */
+    private void addPlayoutAction(HeimlichAndCoAction action, int player) {
+        if (!MctsNode.isRaveAction(action)) {
+            return;
+        }
+        if (playoutSize == playoutActions.length) {
+            playoutActions = Arrays.copyOf(playoutActions, playoutSize * 2);
+            playoutPlayers = Arrays.copyOf(playoutPlayers, playoutSize * 2);
+        }
+        playoutActions[playoutSize] = action;
+        playoutPlayers[playoutSize] = player;
+        playoutSize++;
+    }
+
+    /**
+     * Updates all nodes of the path with the result of a playout, starting from the last node. Afterwards, proven
+     * results are propagated up the path (see MctsNode.updateProvenResult()), as far as the nodes become proven.
+     * With RAVE, the AMAF statistics of the children of the nodes on the path are updated as well.
+     * <p>
+     * If removeVirtualLoss is true, one virtual loss is removed from each node of the path. This has to be used iff the
+     * virtual losses were added during selection (i.e. with tree parallelization).
+     *
+     * @param win               indicating whether the game was won or not (1 on win, 0 on loss).
+     * @param removeVirtualLoss whether a virtual loss should be removed from every node on the path
+     */
+    public void backpropagation(int win, boolean removeVirtualLoss) {
+        if (win != 0 && win != 1) {
+            throw new IllegalArgumentException("Win must be either 1 or 0");
+        }
+        for (int i = size - 1; i >= 0; i--) {
+            nodes[i].update(win, removeVirtualLoss);
+        }
+        if (MctsNode.isRaveUsed()) {
+            updateAmaf(win);
+        }
+        for (int i = size - 1; i >= 0 && nodes[i].updateProvenResult(); i--) {
+            //the result of a node can only become proven if the result of its child on the path is proven
+        }
+    }
+
+    /**
+     * Updates the AMAF statistics of the children of all nodes on the path (see MctsNode.updateAmafOfChildren()).
+     * The nodes are visited from the last one up, s.t. the actions played later in the iteration can be collected on
+     * the way: first the actions of the playout, then the action of each node on the path.
+     */
+    private void updateAmaf(int win) {
+        for (Set<HeimlichAndCoAction> actions : laterActions) {
+            actions.clear();
+        }
+        for (int i = 0; i < playoutSize; i++) {
+            getLaterActions(playoutPlayers[i]).add(playoutActions[i]);
+        }
+        for (int i = size - 1; i >= 0; i--) {
+            MctsNode node = nodes[i];
+            Set<HeimlichAndCoAction> actions = getLaterActions(node.getCurrentPlayer());
+            HeimlichAndCoAction nextAction = node.updateAmafOfChildren(i + 1 < size ? nodes[i + 1] : null, actions, win);
+            if (nextAction != null) {
+                actions.add(nextAction);
+            }
+        }
+    }
+
+    private Set<HeimlichAndCoAction> getLaterActions(int player) {
+        while (laterActions.size() <= player) {
+            laterActions.add(new HashSet<>());
+        }
+        return laterActions.get(player);
+    }
+
+    /**
+     * @return the last node of the path, i.e. the node from where the playout is done
+     */
+    public MctsNode getLast() {
+        if (size == 0) {
+            throw new IllegalStateException("The path is empty.");
+        }
+        return nodes[size - 1];
+    }
+
+    public int size() {
+        return size;
+    }
+}
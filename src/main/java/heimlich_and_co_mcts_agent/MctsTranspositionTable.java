@@ -0,0 +1,131 @@
+package heimlich_and_co_mcts_agent;
+
+import heimlich_and_co.HeimlichAndCo;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed-size transposition table for MCTS. Maps the Zobrist hash of a game state (combined with the depth of the
+ * state in the tree, s.t. the tree cannot contain cycles) to the statistics and the game state of the first node that
+ * was created for it. Nodes that are created for the same state later on share these statistics and the game state.
+ * <p>
+ * Each hash maps to exactly one slot. An entry in a slot is replaced if it was stored during an earlier search, or if
+ * its statistics have fewer than MINIMUM_PLAYOUTS_TO_KEEP playouts (sharing them gains little).
+ * <p>
+ * This can be used by multiple threads at the same time.
+ */
+public class MctsTranspositionTable {
+
+    /**
+     * Entries whose statistics have at least this many playouts are only replaced by entries of newer searches.
+     */
+    private static final int MINIMUM_PLAYOUTS_TO_KEEP = 2;
+
+    /**
+     * An entry of the table, entries are never modified.
+     */
+    public static class Entry {
+        private final long hash;
+        private final NodeStatistics statistics;
+        private final HeimlichAndCo game;
+        private final int generation;
+
+        private Entry(long hash, NodeStatistics statistics, HeimlichAndCo game, int generation) {
+            this.hash = hash;
+            this.statistics = statistics;
+            this.game = game;
+            this.generation = generation;
+        }
+
+        public NodeStatistics getStatistics() {
+            return statistics;
+        }
+
+        /**
+         * @return the game state of the node, must not be modified
+         */
+        public HeimlichAndCo getGame() {
+            return game;
+        }
+    }
+
+    private final AtomicReferenceArray<Entry> entries;
+    private final int mask;
+    /**
+     * incremented with every new search, s.t. old entries are replaced first
+     */
+    private volatile int generation;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger stores = new AtomicInteger();
+
+    /**
+     * @param sizeLog2 the table has 2^sizeLog2 slots
+     */
+    public MctsTranspositionTable(int sizeLog2) {
+        this.entries = new AtomicReferenceArray<>(1 << sizeLog2);
+        this.mask = (1 << sizeLog2) - 1;
+    }
+
+    /**
+     * Marks all entries that are in the table as old, s.t. they are replaced first. Also resets the statistics.
+     * <p>
+     * If the entries are not kept, they are removed, s.t. the game states and statistics of the nodes of the previous
+     * tree can be garbage collected (otherwise up to one game state per slot would stay referenced by the table).
+     *
+     * @param keepEntries whether the entries are kept, i.e. whether the search continues on a subtree of the previous
+     *                    search (whose nodes can still share the entries)
+     */
+    public void newSearch(boolean keepEntries) {
+        if (!keepEntries) {
+            for (int i = 0; i < entries.length(); i++) {
+                entries.set(i, null);
+            }
+        }
+        generation++;
+        hits.set(0);
+        stores.set(0);
+    }
+
+    /**
+     * @param hash of the game state (including the depth)
+     * @return the entry of the game state, or null if there is none
+     */
+    public Entry get(long hash) {
+        Entry entry = entries.get(index(hash));
+        if (entry != null && entry.hash == hash) {
+            hits.incrementAndGet();
+            return entry;
+        }
+        return null;
+    }
+
+    /**
+     * Stores the statistics and the game state of a node, if the replacement policy allows it.
+     *
+     * @param hash       of the game state (including the depth)
+     * @param statistics of the node
+     * @param game       of the node, must not be modified afterwards
+     */
+    public void put(long hash, NodeStatistics statistics, HeimlichAndCo game) {
+        int index = index(hash);
+        Entry entry = entries.get(index);
+        if (entry == null || entry.generation != generation || entry.statistics.getPlayouts() < MINIMUM_PLAYOUTS_TO_KEEP) {
+            if (entries.compareAndSet(index, entry, new Entry(hash, statistics, game, generation))) {
+                stores.incrementAndGet();
+            }
+        }
+    }
+
+    public int getHits() {
+        return hits.get();
+    }
+
+    public int getStores() {
+        return stores.get();
+    }
+
+    private int index(long hash) {
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
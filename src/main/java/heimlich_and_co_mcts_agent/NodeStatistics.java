@@ -0,0 +1,90 @@
+package heimlich_and_co_mcts_agent;
+
+/**
+ * Statistics of an MCTS node. Nodes belonging to the same game state (transpositions) can share their statistics.
+ * <p>
+ * The values are only written while holding the lock of this object, but read without locking (e.g. when
+ * calculating UCT).
+ */
+public class NodeStatistics {
+
+    /**
+     * saves how many wins were achieved from this node
+     */
+    private volatile int wins;
+    /**
+     * saves how many playouts were done from this node (or descendents of this node)
+     */
+    private volatile int playouts;
+    /**
+     * saves how many iterations currently pass through this node, but have not been backpropagated yet.
+     * Only used with tree parallelization, where each of these pending iterations is regarded as a lost playout, s.t.
+     * other threads are pushed towards different parts of the tree.
+     */
+    private volatile int virtualLosses;
+    /**
+     * saves how many of the AMAF playouts were won (see MctsNode.USE_RAVE)
+     */
+    private volatile int amafWins;
+    /**
+     * saves in how many playouts through the parent of this node the action leading to this node was played by the
+     * same player, at any later point of the iteration (all moves as first, see MctsNode.USE_RAVE)
+     */
+    private volatile int amafPlayouts;
+
+    public NodeStatistics() {
+    }
+
+    public NodeStatistics(int wins, int playouts) {
+        this.wins = wins;
+        this.playouts = playouts;
+    }
+
+    /**
+     * Adds a playout.
+     *
+     * @param win               1 on win, 0 on loss
+     * @param removeVirtualLoss whether a virtual loss should be removed as well
+     */
+    public synchronized void update(int win, boolean removeVirtualLoss) {
+        this.playouts++;
+        this.wins += win;
+        if (removeVirtualLoss) {
+            this.virtualLosses--;
+        }
+    }
+
+    /**
+     * Adds an AMAF playout.
+     *
+     * @param win 1 on win, 0 on loss
+     */
+    public synchronized void updateAmaf(int win) {
+        this.amafPlayouts++;
+        this.amafWins += win;
+    }
+
+    public synchronized void addVirtualLoss() {
+        this.virtualLosses++;
+    }
+
+    public int getWins() {
+        return wins;
+    }
+
+    public int getPlayouts() {
+        return playouts;
+    }
+
+    public int getVirtualLosses() {
+        return virtualLosses;
+    }
+
+    public int getAmafWins() {
+        return amafWins;
+    }
+
+    public int getAmafPlayouts() {
+        return amafPlayouts;
+    }
+}
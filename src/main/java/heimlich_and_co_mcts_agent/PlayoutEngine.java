@@ -0,0 +1,184 @@
+package heimlich_and_co_mcts_agent;
+
+import heimlich_and_co.HeimlichAndCo;
+import heimlich_and_co.actions.HeimlichAndCoAction;
+import heimlich_and_co.enums.Agent;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Does playouts and counts how many playouts (and steps) were done per second. The actions of a playout are chosen by
+ * a PlayoutPolicy (uniformly random by default).
+ * <p>
+ * If a playout ends because the game is over, it is won if the agent of the player has the highest score. If it is
+ * cut off before (termination depth or stop condition) and graded evaluation is used, the cut off state is rated with
+ * BoardHeuristics.rateBoard(), mapped to a winning probability with a logistic function and the playout is counted as
+ * won with that probability. This keeps the statistics of the tree in whole wins and playouts, while the expected
+ * value of a cut off playout reflects how far the player is ahead instead of just whether it is leading.
+ * <p>
+ * A playout is done on a PlayoutGame, s.t. the actions (which are taken from the possible actions anyway) are not
+ * validated again when they are applied. If the given game is a PlayoutGame already (e.g. a state rebuilt by a
+ * CompactMctsTree or a determinization), it is played out in place, otherwise exactly one copy is made.
+ * Actions are sampled by iterating over the set of possible actions instead of converting it to an array.
+ * <p>
+ * This can be used by multiple threads at the same time, therefore the thread local random is used.
+ */
+public class PlayoutEngine {
+
+    /**
+     * the player for which a playout is won or lost
+     */
+    private final int playerId;
+    /**
+     * the number of actions after which a playout is stopped and evaluated; -1 to always play till the game ends
+     */
+    private final int terminationDepth;
+    private final PlayoutPolicy policy;
+    /**
+     * whether cut off playouts are evaluated by their rating instead of by the leader
+     */
+    private final boolean gradedEvaluation;
+    private final LongAdder playouts = new LongAdder();
+    private final LongAdder steps = new LongAdder();
+    private final long startNanos = System.nanoTime();
+
+    /**
+     * A difference of this many points in the rating of a cut off playout (see BoardHeuristics.rateBoard()) counts as
+     * a winning probability of about 73% (and -GRADED_EVALUATION_SCALE as 27%).
+     */
+    private static final double GRADED_EVALUATION_SCALE = 6;
+
+    /**
+     * Creates an engine with random playouts, which are evaluated by the leader if they are cut off.
+     */
+    public PlayoutEngine(int playerId, int terminationDepth) {
+        this(playerId, terminationDepth, new RandomPlayoutPolicy(), false);
+    }
+
+    /**
+     * @param playerId         the player for which a playout is won or lost
+     * @param terminationDepth the number of actions after which a playout is stopped and evaluated; -1 to always play
+     *                         till the game ends
+     * @param policy           chooses the actions of the playouts
+     * @param gradedEvaluation whether cut off playouts are won with a probability depending on their rating, instead of
+     *                         being won iff the player is leading
+     */
+    public PlayoutEngine(int playerId, int terminationDepth, PlayoutPolicy policy, boolean gradedEvaluation) {
+        this.playerId = playerId;
+        this.terminationDepth = terminationDepth;
+        this.policy = policy;
+        this.gradedEvaluation = gradedEvaluation;
+    }
+
+    /**
+     * Plays actions chosen by the policy until the game is over, the termination depth is reached or the stop
+     * condition is true.
+     *
+     * @param game          to play out, is modified if it is a PlayoutGame
+     * @param stopCondition determines when to stop the playout early
+     * @return 1 or 0, depending on whether the agent belonging to the player wins (has the highest score), see
+     * PlayoutEngine for the evaluation of cut off playouts
+     */
+    public int playout(HeimlichAndCo game, BooleanSupplier stopCondition) {
+        return playout(game, stopCondition, null);
+    }
+
+    /**
+     * Like playout(game, stopCondition), but reports every action of the playout (e.g. for RAVE, see MctsPath).
+     *
+     * @param game           to play out, is modified if it is a PlayoutGame
+     * @param stopCondition  determines when to stop the playout early
+     * @param actionListener is called with every action and the player who plays it, before the action is applied;
+     *                       null if the actions are not needed
+     * @return 1 or 0, depending on whether the agent belonging to the player wins
+     */
+    public int playout(HeimlichAndCo game, BooleanSupplier stopCondition, ObjIntConsumer<HeimlichAndCoAction> actionListener) {
+        HeimlichAndCo playoutGame = game instanceof PlayoutGame ? game : new PlayoutGame(game);
+        Random random = ThreadLocalRandom.current();
+        int simulationDepth = 0;
+        while (!playoutGame.isGameOver() && !stopCondition.getAsBoolean()) {
+            if (terminationDepth >= 0 && simulationDepth >= terminationDepth) {
+                break;
+            }
+            HeimlichAndCoAction action = policy.selectAction(playoutGame, playoutGame.getPossibleActions(), random);
+            if (actionListener != null) {
+                actionListener.accept(action, playoutGame.getCurrentPlayer());
+            }
+            playoutGame.applyAction(action);
+            simulationDepth++;
+        }
+        playouts.increment();
+        steps.add(simulationDepth);
+
+        if (gradedEvaluation && !playoutGame.isGameOver()) {
+            Agent agent = playoutGame.getPlayersToAgentsMap().get(this.playerId);
+            int rating = BoardHeuristics.rateBoard(playoutGame.getBoard(), agent);
+            double winProbability = 1 / (1 + Math.exp(-rating / GRADED_EVALUATION_SCALE));
+            return random.nextDouble() < winProbability ? 1 : 0;
+        }
+        return getResult(playoutGame, this.playerId);
+    }
+
+    /**
+     * The game is regarded as won if the agent of the player has the highest score (ties count as wins).
+     *
+     * @param game     the game, usually at its end
+     * @param playerId the player for which the result is determined
+     * @return 1 or 0, depending on whether the agent belonging to the player has the highest score
+     */
+    public static int getResult(HeimlichAndCo game, int playerId) {
+        Map<Agent, Integer> scores = game.getBoard().getScores();
+        int maxValue = 0;
+        for (int i : scores.values()) {
+            if (i > maxValue) {
+                maxValue = i;
+            }
+        }
+        if (maxValue == scores.get(game.getPlayersToAgentsMap().get(playerId))) {
+            return 1;
+        } else {
+            return 0;
+        }
+    }
+
+    /**
+     * Chooses a uniformly random action from the given set without copying it.
+     *
+     * @param actions to choose from, must not be empty
+     * @param random  used for choosing
+     * @return a random element of actions
+     */
+    public static HeimlichAndCoAction sampleAction(Set<HeimlichAndCoAction> actions, Random random) {
+        int index = random.nextInt(actions.size());
+        for (HeimlichAndCoAction action : actions) {
+            if (index-- == 0) {
+                return action;
+            }
+        }
+        throw new IllegalStateException("The set of actions was modified while sampling");
+    }
+
+    public long getPlayouts() {
+        return playouts.sum();
+    }
+
+    /**
+     * @return playouts done per second since this engine was created
+     */
+    public double getPlayoutsPerSecond() {
+        return playouts.sum() / ((System.nanoTime() - startNanos) / 1e9);
+    }
+
+    /**
+     * @return steps (applied actions) done in playouts per second since this engine was created
+     */
+    public double getStepsPerSecond() {
+        return steps.sum() / ((System.nanoTime() - startNanos) / 1e9);
+    }
+}
@@ -0,0 +1,35 @@
+package heimlich_and_co_mcts_agent;
+
+import heimlich_and_co.HeimlichAndCo;
+import heimlich_and_co.actions.HeimlichAndCoAction;
+
+/**
+ * A game that does not check whether an applied action is valid.
+ * <p>
+ * HeimlichAndCo.applyAction() validates every action by computing all possible actions of the current state, which
+ * roughly doubles the cost of every step when the action was just taken from getPossibleActions() anyway (as it is
+ * the case in playouts and when replaying actions of a tree). Therefore, only actions that are known to be valid may
+ * be applied to this game.
+ */
+public class PlayoutGame extends HeimlichAndCo {
+
+    /**
+     * Creates a copy of the given game.
+     *
+     * @param game to copy
+     */
+    public PlayoutGame(HeimlichAndCo game) {
+        super(game);
+    }
+
+    /**
+     * Does not check the action, every action is regarded as valid.
+     *
+     * @param action to check
+     * @return always true
+     */
+    @Override
+    public boolean isValidAction(HeimlichAndCoAction action) {
+        return true;
+    }
+}
@@ -0,0 +1,24 @@
+package heimlich_and_co_mcts_agent;
+
+import heimlich_and_co.HeimlichAndCo;
+import heimlich_and_co.actions.HeimlichAndCoAction;
+
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Chooses the actions played in a playout (see PlayoutEngine).
+ * <p>
+ * Implementations have to be thread-safe, as the playouts of multiple threads use the same policy. Die rolls should be
+ * chosen uniformly at random, as they are not a decision of a player.
+ */
+public interface PlayoutPolicy {
+
+    /**
+     * @param game            the game of the playout, must not be modified
+     * @param possibleActions the possible actions of the game (not empty), must not be modified
+     * @param random          used for all random decisions
+     * @return the action to play
+     */
+    HeimlichAndCoAction selectAction(HeimlichAndCo game, Set<HeimlichAndCoAction> possibleActions, Random random);
+}
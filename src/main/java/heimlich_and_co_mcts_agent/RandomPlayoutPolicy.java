@@ -0,0 +1,18 @@
+package heimlich_and_co_mcts_agent;
+
+import heimlich_and_co.HeimlichAndCo;
+import heimlich_and_co.actions.HeimlichAndCoAction;
+
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Chooses a uniformly random action.
+ */
+public class RandomPlayoutPolicy implements PlayoutPolicy {
+
+    @Override
+    public HeimlichAndCoAction selectAction(HeimlichAndCo game, Set<HeimlichAndCoAction> possibleActions, Random random) {
+        return PlayoutEngine.sampleAction(possibleActions, random);
+    }
+}
@@ -0,0 +1,139 @@
+package heimlich_and_co_tournament;
+
+import heimlich_and_co.HeimlichAndCo;
+import heimlich_and_co.actions.HeimlichAndCoAction;
+import heimlich_and_co.actions.HeimlichAndCoAgentMoveAction;
+import heimlich_and_co.actions.HeimlichAndCoDieRollAction;
+import heimlich_and_co.enums.Agent;
+import heimlich_and_co.enums.HeimlichAndCoPhase;
+import heimlich_and_co_agent_core.OpeningTable;
+import heimlich_and_co_agent_core.PackedGameState;
+import heimlich_and_co_mcts_agent.HeimlichAndCoMCTSAgent;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates an opening table (see OpeningTable) by searching the positions of the first turns of games without cards
+ * with the MCTS agent and a long time per move.
+ * <p>
+ * Starting from the initial game, all outcomes of the die rolls are followed. In every position in which a player
+ * has to decide, the position is searched once for every agent the player could have, as the best action depends on
+ * it, and each of the found actions is followed further. The positions are followed until the given number of turns
+ * is played.
+ * <p>
+ * Usage (all arguments are optional):
+ * <pre>
+ * gradlew generateOpeningTable --args="--players 2,3,4,5,6,7 --turns 1 --time 10000 --output opening_table.bin"
+ * </pre>
+ * <ul>
+ *     <li>--players: the numbers of players to generate the table for</li>
+ *     <li>--turns: the number of turns (i.e. agent moves) after which no more positions are searched</li>
+ *     <li>--time: time per search in milliseconds, as given to computeNextAction()</li>
+ *     <li>--output: the file the table is written to</li>
+ * </ul>
+ * The number of searches grows by a factor of about 6 * (number of agents)^2 with every turn.
+ */
+public class OpeningTableGenerator {
+
+    public static void main(String[] args) throws IOException {
+        List<Integer> playerCounts = Arrays.asList(2, 3, 4, 5, 6, 7);
+        int turns = 1;
+        long moveTimeMillis = 10_000;
+        Path output = Paths.get("opening_table.bin");
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--players":
+                    playerCounts = new ArrayList<>();
+                    for (String playerCount : args[++i].split(",")) {
+                        playerCounts.add(Integer.parseInt(playerCount));
+                    }
+                    break;
+                case "--turns":
+                    turns = Integer.parseInt(args[++i]);
+                    break;
+                case "--time":
+                    moveTimeMillis = Long.parseLong(args[++i]);
+                    break;
+                case "--output":
+                    output = Paths.get(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument: " + args[i]);
+            }
+        }
+
+        Map<Long, OpeningTable.Entry> entries = new HashMap<>();
+        for (int numberOfPlayers : playerCounts) {
+            int searches = generate(numberOfPlayers, turns, moveTimeMillis, entries);
+            System.out.println("Searched " + searches + " positions with " + numberOfPlayers + " players, " + entries.size() + " entries in total");
+        }
+        OpeningTable.write(output, entries);
+        System.out.println("Wrote " + entries.size() + " entries to " + output);
+    }
+
+    /**
+     * Searches the positions of the first turns of games with the given number of players and adds them to the entries.
+     *
+     * @return the number of searches
+     */
+    private static int generate(int numberOfPlayers, int turns, long moveTimeMillis, Map<Long, OpeningTable.Entry> entries) {
+        int searches = 0;
+        Deque<HeimlichAndCo> positions = new ArrayDeque<>();
+        HeimlichAndCo initialGame = new HeimlichAndCo(null, numberOfPlayers);
+        initialGame.setAllowCustomDieRolls(true);
+        positions.add(initialGame);
+        while (!positions.isEmpty()) {
+            HeimlichAndCo game = positions.poll();
+            if (game.isGameOver()) {
+                continue;
+            }
+            if (game.getCurrentPhase() == HeimlichAndCoPhase.DIE_ROLL_PHASE) {
+                if (countAgentMoves(game) < turns) {
+                    for (int face : game.getBoard().getDieFaces()) {
+                        positions.add(game.doAction(new HeimlichAndCoDieRollAction(face)));
+                    }
+                }
+                continue;
+            }
+            Set<HeimlichAndCoAction> bestActions = new HashSet<>();
+            int player = game.getCurrentPlayer();
+            for (Agent agent : game.getBoard().getAgents()) {
+                HeimlichAndCo view = (HeimlichAndCo) game.getGame(player);
+                view.setAllowCustomDieRolls(false);
+                view.getPlayersToAgentsMap().put(player, agent);
+                long key = OpeningTable.getKey(view);
+                HeimlichAndCoMCTSAgent searchAgent = new HeimlichAndCoMCTSAgent(Tournament.createLogger());
+                searchAgent.setUp(numberOfPlayers, player);
+                HeimlichAndCoAction action;
+                try {
+                    //the view is modified by the search
+                    action = searchAgent.computeNextAction(new HeimlichAndCo(view), moveTimeMillis, TimeUnit.MILLISECONDS);
+                } finally {
+                    searchAgent.tearDown();
+                    searchAgent.destroy();
+                }
+                searches++;
+                int move = new PackedGameState(view).toMove(action);
+                if (move < 0) {
+                    continue;
+                }
+                int playouts = searchAgent.getLastActionPlayouts();
+                float winRate = playouts == 0 ? 0 : (float) searchAgent.getLastActionWins() / playouts;
+                entries.put(key, new OpeningTable.Entry(move, playouts, winRate));
+                bestActions.add(action);
+            }
+            for (HeimlichAndCoAction action : bestActions) {
+                positions.add(game.doAction(action));
+            }
+        }
+        return searches;
+    }
+
+    private static int countAgentMoves(HeimlichAndCo game) {
+        return (int) game.getActionRecords().stream().filter(record -> record.getAction() instanceof HeimlichAndCoAgentMoveAction).count();
+    }
+}
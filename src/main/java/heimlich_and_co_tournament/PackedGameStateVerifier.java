@@ -0,0 +1,155 @@
+package heimlich_and_co_tournament;
+
+import heimlich_and_co.HeimlichAndCo;
+import heimlich_and_co.HeimlichAndCoBoard;
+import heimlich_and_co.actions.HeimlichAndCoAction;
+import heimlich_and_co.actions.HeimlichAndCoDieRollAction;
+import heimlich_and_co.enums.Agent;
+import heimlich_and_co_agent_core.PackedGameState;
+import heimlich_and_co_mcts_agent.PlayoutGame;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * Differential check of PackedGameState against HeimlichAndCo: plays random games on both and compares the states and
+ * the possible moves after every move. Additionally, every move is made, unmade and made again on the packed state,
+ * the game is converted back with PackedGameState.toGame() every TO_GAME_INTERVAL moves and at the end of every game
+ * all moves are unmade again.
+ * <p>
+ * Usage (all arguments are optional):
+ * <pre>
+ * gradlew verifyPackedGameState --args="--games 1000000 --players 3 --seed 1"
+ * </pre>
+ * <ul>
+ *     <li>--games: number of games</li>
+ *     <li>--players: number of players per game, by default it is chosen randomly (2 to 7) for every game</li>
+ *     <li>--seed: the seed of game i is seed + i, s.t. a game with a difference can be replayed</li>
+ * </ul>
+ * The first difference is reported with the seed of the game and ends the run with an exception.
+ */
+public class PackedGameStateVerifier {
+
+    /**
+     * Number of moves after which the packed state is converted back to a game and compared again.
+     */
+    private static final int TO_GAME_INTERVAL = 50;
+
+    public static void main(String[] args) {
+        int numberOfGames = 100_000;
+        int numberOfPlayers = 0;
+        long seed = 1;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--games":
+                    numberOfGames = Integer.parseInt(args[++i]);
+                    break;
+                case "--players":
+                    numberOfPlayers = Integer.parseInt(args[++i]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument: " + args[i]);
+            }
+        }
+
+        long startNanos = System.nanoTime();
+        long moves = 0;
+        for (int game = 0; game < numberOfGames; game++) {
+            moves += verifyGame(seed + game, numberOfPlayers);
+            if ((game + 1) % Math.max(1, numberOfGames / 10) == 0 || game + 1 == numberOfGames) {
+                System.out.println("Verified " + (game + 1) + "/" + numberOfGames + " games, " + moves + " moves");
+            }
+        }
+        System.out.println(String.format("No differences found in %d games with %d moves (%.1f s)", numberOfGames, moves,
+                (System.nanoTime() - startNanos) / 1e9));
+    }
+
+    /**
+     * Plays one random game on a HeimlichAndCo and a PackedGameState and compares them after every move.
+     *
+     * @param gameSeed        the seed of the random moves of the game
+     * @param numberOfPlayers number of players of the game, 0 to choose it randomly (2 to 7)
+     * @return the number of moves of the game
+     * @throws IllegalStateException at the first difference
+     */
+    public static int verifyGame(long gameSeed, int numberOfPlayers) {
+        SplittableRandom random = new SplittableRandom(gameSeed);
+        int players = numberOfPlayers > 0 ? numberOfPlayers : 2 + random.nextInt(6);
+        int[] packedMoves = new int[PackedGameState.MAX_MOVES];
+        //the moves are compared with the possible actions before they are made, so they need not be validated again
+        HeimlichAndCo game = new PlayoutGame(new HeimlichAndCo(null, players));
+        game.setAllowCustomDieRolls(true);
+        PackedGameState packed = new PackedGameState(game);
+        long initialState = packed.getPackedState();
+        long initialScores = packed.getPackedScores();
+        int moves = 0;
+        while (true) {
+            String context = "game with seed " + gameSeed + " after " + moves + " moves";
+            compare(game, packed, context);
+            int numberOfMoves = packed.getPossibleMoves(packedMoves);
+            compareMoves(game, packed, packedMoves, numberOfMoves, context);
+            if (numberOfMoves == 0) {
+                break;
+            }
+            int move = packedMoves[random.nextInt(numberOfMoves)];
+            long state = packed.getPackedState();
+            long scores = packed.getPackedScores();
+            packed.makeMove(move);
+            packed.undoMove();
+            if (packed.getPackedState() != state || packed.getPackedScores() != scores) {
+                throw new IllegalStateException("undoMove() did not restore the state in the " + context);
+            }
+            packed.makeMove(move);
+            game.applyAction(packed.toAction(move));
+            moves++;
+            if (moves % TO_GAME_INTERVAL == 0) {
+                compare(packed.toGame(), packed, "converted " + context);
+            }
+        }
+        while (packed.getDepth() > 0) {
+            packed.undoMove();
+        }
+        if (packed.getPackedState() != initialState || packed.getPackedScores() != initialScores) {
+            throw new IllegalStateException("Unmaking all moves did not restore the initial state in the game with seed " + gameSeed);
+        }
+        return moves;
+    }
+
+    private static void compare(HeimlichAndCo game, PackedGameState packed, String context) {
+        HeimlichAndCoBoard board = game.getBoard();
+        for (Agent agent : board.getAgents()) {
+            check(board.getAgentsPositions().get(agent), packed.getAgentPosition(agent.ordinal()), "position of " + agent, context);
+            check(board.getScores().get(agent), packed.getScore(agent.ordinal()), "score of " + agent, context);
+        }
+        check(board.getAgents().length, packed.getNumberOfAgents(), "number of agents", context);
+        check(board.getSafePosition(), packed.getSafePosition(), "safe position", context);
+        check(board.getLastDieRoll(), packed.getLastDieRoll(), "last die roll", context);
+        check(game.getCurrentPhase(), packed.getPhase(), "phase", context);
+        check(game.getCurrentPlayer(), packed.getCurrentPlayer(), "current player", context);
+        check(game.isGameOver(), packed.isGameOver(), "game over", context);
+    }
+
+    /**
+     * Compares the possible moves, except for the random die roll, which has no move.
+     */
+    private static void compareMoves(HeimlichAndCo game, PackedGameState packed, int[] packedMoves, int numberOfMoves, String context) {
+        Set<HeimlichAndCoAction> expected = game.getPossibleActions();
+        expected.remove(HeimlichAndCoDieRollAction.getRandomRollAction());
+        Set<HeimlichAndCoAction> actual = new HashSet<>();
+        for (int i = 0; i < numberOfMoves; i++) {
+            actual.add(packed.toAction(packedMoves[i]));
+        }
+        check(expected.size(), numberOfMoves, "number of possible moves", context);
+        check(expected, actual, "possible moves", context);
+    }
+
+    private static void check(Object expected, Object actual, String what, String context) {
+        if (!expected.equals(actual)) {
+            throw new IllegalStateException("Different " + what + " in the " + context + ": expected " + expected + ", but was " + actual);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package heimlich_and_co_tournament;
+
+import at.ac.tuwien.ifs.sge.agent.GameAgent;
+import at.ac.tuwien.ifs.sge.engine.Logger;
+import heimlich_and_co.HeimlichAndCo;
+import heimlich_and_co.actions.HeimlichAndCoAction;
+import heimlich_and_co_depth_search_agent.HeimlichAndCoDepthSearchAgent;
+import heimlich_and_co_mcts_agent.HeimlichAndCoMCTSAgent;
+import heimlich_and_co_random_agent.HeimlichAndCoRandomAgent;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+/**
+ * Headless tournament runner, which plays many games between the agents in parallel without the SGE engine.
+ * <p>
+ * Usage (all arguments are optional):
+ * <pre>
+ * gradlew tournament --args="--agents mcts,depth,random --players 3 --cards --games 1000 --time 1000 --threads 4 --seed 1"
+ * </pre>
+ * <ul>
+ *     <li>--agents: the agents playing (random, depth, mcts); if there are fewer agents than players, the list is
+ *     repeated</li>
+ *     <li>--players: number of players per game</li>
+ *     <li>--cards: play with cards</li>
+ *     <li>--games: number of games</li>
+ *     <li>--time: time per move in milliseconds, as given to computeNextAction()</li>
+ *     <li>--threads: number of games played at the same time</li>
+ *     <li>--seed: the seed of game i is seed + i, so the same arguments lead to the same games (apart from the
+ *     randomness of the agents themselves)</li>
+ * </ul>
+ * The agents are rotated through the seats, i.e. in game i the agent at position j of the list plays as player
+ * (i + j) mod players. Note that the MCTS agent uses several threads itself (see HeimlichAndCoMCTSAgent), which should
+ * be taken into account when choosing the number of threads.
+ * <p>
+ * For each agent, the win rate (a shared highest score counts as a fraction of a win) with a 95% confidence interval
+ * (Wilson score interval), the average and maximum time per move and the nodes/playouts per second (if the agent
+ * implements SearchStatistics) are reported.
+ */
+public class Tournament {
+
+    private static final Map<String, Function<Logger, GameAgent<HeimlichAndCo, HeimlichAndCoAction>>> AGENT_FACTORIES = new LinkedHashMap<>();
+
+    static {
+        AGENT_FACTORIES.put("random", HeimlichAndCoRandomAgent::new);
+        AGENT_FACTORIES.put("depth", HeimlichAndCoDepthSearchAgent::new);
+        AGENT_FACTORIES.put("mcts", HeimlichAndCoMCTSAgent::new);
+    }
+
+    /**
+     * z-value for the 95% confidence interval
+     */
+    private static final double Z = 1.96;
+
+    /**
+     * Summed results of all games of one agent.
+     */
+    private static class AgentResults {
+        int games;
+        double wins;
+        int moves;
+        long moveNanos;
+        long maxMoveNanos;
+        long nodes;
+        long playouts;
+        int errors;
+
+        void add(TournamentGame.PlayerResult result) {
+            games++;
+            wins += result.winShare;
+            moves += result.moves;
+            moveNanos += result.moveNanos;
+            maxMoveNanos = Math.max(maxMoveNanos, result.maxMoveNanos);
+            nodes += result.nodes;
+            playouts += result.playouts;
+            errors += result.errors;
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        List<String> agentNames = Arrays.asList("mcts", "depth", "random");
+        int numberOfPlayers = 3;
+        boolean withCards = false;
+        int numberOfGames = 100;
+        long moveTimeMillis = 1000;
+        int numberOfThreads = Runtime.getRuntime().availableProcessors();
+        long seed = 1;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--agents":
+                    agentNames = Arrays.asList(args[++i].split(","));
+                    break;
+                case "--players":
+                    numberOfPlayers = Integer.parseInt(args[++i]);
+                    break;
+                case "--cards":
+                    withCards = true;
+                    break;
+                case "--games":
+                    numberOfGames = Integer.parseInt(args[++i]);
+                    break;
+                case "--time":
+                    moveTimeMillis = Long.parseLong(args[++i]);
+                    break;
+                case "--threads":
+                    numberOfThreads = Integer.parseInt(args[++i]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument: " + args[i]);
+            }
+        }
+        for (String agentName : agentNames) {
+            if (!AGENT_FACTORIES.containsKey(agentName)) {
+                throw new IllegalArgumentException("Unknown agent: " + agentName + ", known agents: " + AGENT_FACTORIES.keySet());
+            }
+        }
+
+        System.out.println("Playing " + numberOfGames + " games with " + numberOfPlayers + " players" + (withCards ? " with cards" : "")
+                + ", " + moveTimeMillis + "ms per move, " + numberOfThreads + " threads, agents " + agentNames);
+        Map<String, AgentResults> results = play(agentNames, numberOfPlayers, withCards, numberOfGames, moveTimeMillis, numberOfThreads, seed);
+        printResults(results);
+    }
+
+    /**
+     * Plays the games on a thread pool and sums up the results per agent.
+     */
+    private static Map<String, AgentResults> play(List<String> agentNames, int numberOfPlayers, boolean withCards, int numberOfGames,
+                                                  long moveTimeMillis, int numberOfThreads, long seed) throws InterruptedException {
+        ExecutorService executorService = Executors.newFixedThreadPool(numberOfThreads);
+        CompletionService<List<TournamentGame.PlayerResult>> completionService = new ExecutorCompletionService<>(executorService);
+        for (int game = 0; game < numberOfGames; game++) {
+            List<String> players = new ArrayList<>(numberOfPlayers);
+            for (int player = 0; player < numberOfPlayers; player++) {
+                //the agent at position j of the list plays as player (game + j) mod numberOfPlayers
+                players.add(agentNames.get(Math.floorMod(player - game, numberOfPlayers) % agentNames.size()));
+            }
+            TournamentGame tournamentGame = new TournamentGame(players, AGENT_FACTORIES, withCards, moveTimeMillis, seed + game);
+            completionService.submit(tournamentGame::play);
+        }
+
+        Map<String, AgentResults> results = new TreeMap<>();
+        int failedGames = 0;
+        try {
+            for (int game = 0; game < numberOfGames; game++) {
+                try {
+                    for (TournamentGame.PlayerResult result : completionService.take().get()) {
+                        results.computeIfAbsent(result.agentName, name -> new AgentResults()).add(result);
+                    }
+                } catch (ExecutionException ex) {
+                    failedGames++;
+                    ex.getCause().printStackTrace();
+                }
+                if ((game + 1) % 10 == 0 || game + 1 == numberOfGames) {
+                    System.out.println("Finished " + (game + 1) + "/" + numberOfGames + " games");
+                }
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+        if (failedGames > 0) {
+            System.out.println(failedGames + " games failed and are not included in the results");
+        }
+        return results;
+    }
+
+    private static void printResults(Map<String, AgentResults> results) {
+        System.out.println();
+        System.out.println(String.format("%-8s %7s %8s %17s %10s %10s %12s %12s %7s",
+                "agent", "games", "win rate", "95% CI", "avg ms", "max ms", "nodes/s", "playouts/s", "errors"));
+        for (Map.Entry<String, AgentResults> entry : results.entrySet()) {
+            AgentResults result = entry.getValue();
+            double winRate = result.wins / result.games;
+            double[] interval = wilsonInterval(result.wins, result.games);
+            double seconds = result.moveNanos / 1e9;
+            System.out.println(String.format(Locale.ROOT, "%-8s %7d %8.3f  [%6.3f, %6.3f] %10.1f %10.1f %12.1f %12.1f %7d",
+                    entry.getKey(), result.games, winRate, interval[0], interval[1],
+                    result.moves == 0 ? 0 : result.moveNanos / 1e6 / result.moves, result.maxMoveNanos / 1e6,
+                    seconds == 0 ? 0 : result.nodes / seconds, seconds == 0 ? 0 : result.playouts / seconds, result.errors));
+        }
+    }
+
+    /**
+     * Calculates the Wilson score interval of a win rate with the z-value Z.
+     *
+     * @return the lower and upper bound of the interval
+     */
+    private static double[] wilsonInterval(double wins, int games) {
+        double p = wins / games;
+        double denominator = 1 + Z * Z / games;
+        double center = (p + Z * Z / (2 * games)) / denominator;
+        double halfWidth = Z * Math.sqrt(p * (1 - p) / games + Z * Z / (4.0 * games * games)) / denominator;
+        return new double[]{center - halfWidth, center + halfWidth};
+    }
+
+    /**
+     * @return a logger for an agent, which only prints errors
+     */
+    static Logger createLogger() {
+        PrintStream nullStream = new PrintStream(OutputStream.nullOutputStream());
+        return new Logger(0, "", "", "", nullStream, "", "", nullStream, "", "", nullStream, "", "", nullStream, "", "", System.err, "");
+    }
+}
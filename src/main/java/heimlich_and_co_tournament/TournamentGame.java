@@ -0,0 +1,204 @@
+package heimlich_and_co_tournament;
+
+import at.ac.tuwien.ifs.sge.agent.GameAgent;
+import at.ac.tuwien.ifs.sge.engine.Logger;
+import heimlich_and_co.HeimlichAndCo;
+import heimlich_and_co.actions.HeimlichAndCoAction;
+import heimlich_and_co.actions.HeimlichAndCoDieRollAction;
+import heimlich_and_co.cards.HeimlichAndCoCard;
+import heimlich_and_co.enums.Agent;
+import heimlich_and_co.enums.HeimlichAndCoPhase;
+import heimlich_and_co.util.CardStack;
+import heimlich_and_co_agent_core.SearchStatistics;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Plays one game of a tournament without the SGE engine, i.e. the agents are called directly.
+ * <p>
+ * Everything random in the game is determined by the seed: the assignment of agents to players, the order of the
+ * cards and the die rolls. For the die rolls, custom die rolls are allowed in the game (but not in the games given to
+ * the agents), and every random roll of an agent is replaced by a custom roll of a value chosen with the seed.
+ * Therefore, the agents see custom die roll actions in the action records, instead of random ones.
+ * <p>
+ * If an agent throws an exception or returns an invalid action, the error is counted and a random action (chosen with
+ * the seed) is played instead, s.t. the game can be finished.
+ */
+class TournamentGame {
+
+    /**
+     * The result of one player of a game.
+     */
+    static class PlayerResult {
+        final String agentName;
+        /**
+         * 1 if the agent of the player has the highest score of all agents of players, 1/n if n agents share the
+         * highest score, 0 otherwise
+         */
+        double winShare;
+        int moves;
+        long moveNanos;
+        long maxMoveNanos;
+        long nodes;
+        long playouts;
+        int errors;
+
+        PlayerResult(String agentName) {
+            this.agentName = agentName;
+        }
+    }
+
+    /**
+     * Limits the number of actions, s.t. a game with agents that never end the game is stopped.
+     */
+    private static final int MAXIMUM_NUMBER_OF_ACTIONS = 5000;
+
+    private final List<String> agentNames;
+    private final Map<String, Function<Logger, GameAgent<HeimlichAndCo, HeimlichAndCoAction>>> agentFactories;
+    private final boolean withCards;
+    private final long moveTimeMillis;
+    private final Random random;
+
+    /**
+     * @param agentNames     the names of the agents, one for each player (in order of the players)
+     * @param agentFactories creates the agents by name
+     * @param withCards      whether the game is played with cards
+     * @param moveTimeMillis the time the agents get for computing an action
+     * @param seed           determines everything random in the game
+     */
+    TournamentGame(List<String> agentNames, Map<String, Function<Logger, GameAgent<HeimlichAndCo, HeimlichAndCoAction>>> agentFactories,
+                   boolean withCards, long moveTimeMillis, long seed) {
+        this.agentNames = agentNames;
+        this.agentFactories = agentFactories;
+        this.withCards = withCards;
+        this.moveTimeMillis = moveTimeMillis;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Plays the game.
+     *
+     * @return the results of the players, in order of the players
+     */
+    List<PlayerResult> play() {
+        int numberOfPlayers = agentNames.size();
+        HeimlichAndCo game = new HeimlichAndCo(withCards ? "cards" : null, numberOfPlayers);
+        game.setAllowCustomDieRolls(true);
+        assignAgents(game);
+        if (withCards) {
+            shuffleCards(game);
+        }
+
+        List<GameAgent<HeimlichAndCo, HeimlichAndCoAction>> agents = new ArrayList<>(numberOfPlayers);
+        List<PlayerResult> results = new ArrayList<>(numberOfPlayers);
+        for (int i = 0; i < numberOfPlayers; i++) {
+            GameAgent<HeimlichAndCo, HeimlichAndCoAction> agent = agentFactories.get(agentNames.get(i)).apply(Tournament.createLogger());
+            agent.setUp(numberOfPlayers, i);
+            agents.add(agent);
+            results.add(new PlayerResult(agentNames.get(i)));
+        }
+
+        try {
+            for (int i = 0; i < MAXIMUM_NUMBER_OF_ACTIONS && !game.isGameOver(); i++) {
+                int player = game.getCurrentPlayer();
+                PlayerResult result = results.get(player);
+                HeimlichAndCo view = (HeimlichAndCo) game.getGame(player);
+                view.setAllowCustomDieRolls(false);
+
+                HeimlichAndCoAction action = null;
+                long start = System.nanoTime();
+                try {
+                    action = agents.get(player).computeNextAction(view, moveTimeMillis, TimeUnit.MILLISECONDS);
+                } catch (Exception ex) {
+                    result.errors++;
+                }
+                long nanos = System.nanoTime() - start;
+                result.moves++;
+                result.moveNanos += nanos;
+                result.maxMoveNanos = Math.max(result.maxMoveNanos, nanos);
+
+                if (action == null || !game.isValidAction(action)) {
+                    if (action != null) {
+                        result.errors++;
+                    }
+                    action = chooseRandomAction(game);
+                }
+                if (game.getCurrentPhase() == HeimlichAndCoPhase.DIE_ROLL_PHASE && action.equals(HeimlichAndCoDieRollAction.getRandomRollAction())) {
+                    int[] dieFaces = game.getBoard().getDieFaces();
+                    action = new HeimlichAndCoDieRollAction(dieFaces[random.nextInt(dieFaces.length)]);
+                }
+                game.applyAction(action);
+            }
+        } finally {
+            for (int i = 0; i < numberOfPlayers; i++) {
+                GameAgent<HeimlichAndCo, HeimlichAndCoAction> agent = agents.get(i);
+                if (agent instanceof SearchStatistics) {
+                    results.get(i).nodes = ((SearchStatistics) agent).getTotalNodeCount();
+                    results.get(i).playouts = ((SearchStatistics) agent).getTotalPlayouts();
+                }
+                agent.tearDown();
+                agent.destroy();
+            }
+        }
+
+        //only the agents of players can win, agents without a player are ignored
+        Map<Agent, Integer> scores = game.getBoard().getScores();
+        int maxScore = Integer.MIN_VALUE;
+        for (int i = 0; i < numberOfPlayers; i++) {
+            maxScore = Math.max(maxScore, scores.get(game.getPlayersToAgentsMap().get(i)));
+        }
+        int numberOfWinners = 0;
+        for (int i = 0; i < numberOfPlayers; i++) {
+            if (scores.get(game.getPlayersToAgentsMap().get(i)) == maxScore) {
+                numberOfWinners++;
+            }
+        }
+        for (int i = 0; i < numberOfPlayers; i++) {
+            if (scores.get(game.getPlayersToAgentsMap().get(i)) == maxScore) {
+                results.get(i).winShare = 1.0 / numberOfWinners;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Assigns agents of the board to the players, the agents and their order are determined by the seed.
+     */
+    private void assignAgents(HeimlichAndCo game) {
+        List<Agent> agents = new ArrayList<>(Arrays.asList(game.getBoard().getAgents()));
+        agents.sort(Comparator.naturalOrder()); //s.t. the order does not depend on the game
+        Collections.shuffle(agents, random);
+        for (int i = 0; i < game.getNumberOfPlayers(); i++) {
+            game.getPlayersToAgentsMap().put(i, agents.get(i));
+        }
+    }
+
+    /**
+     * Shuffles all cards of the game (in the hands of the players and in the card stack) in an order determined by the
+     * seed and deals them again, s.t. every player has as many cards as before.
+     */
+    private void shuffleCards(HeimlichAndCo game) {
+        List<HeimlichAndCoCard> cards = new ArrayList<>();
+        for (int i = 0; i < game.getNumberOfPlayers(); i++) {
+            cards.addAll(game.getCards().get(i));
+        }
+        cards.addAll(game.getCardStack().getCards());
+        cards.sort(Comparator.comparing(HeimlichAndCoCard::toString));
+        Collections.shuffle(cards, random);
+        int cardIndex = 0;
+        for (int i = 0; i < game.getNumberOfPlayers(); i++) {
+            int numberOfCards = game.getCards().get(i).size();
+            game.getCards().put(i, new LinkedList<>(cards.subList(cardIndex, cardIndex + numberOfCards)));
+            cardIndex += numberOfCards;
+        }
+        game.setCardStack(new CardStack<>(new ArrayList<>(cards.subList(cardIndex, cards.size()))));
+    }
+
+    private HeimlichAndCoAction chooseRandomAction(HeimlichAndCo game) {
+        List<HeimlichAndCoAction> possibleActions = new ArrayList<>(game.getPossibleActions());
+        possibleActions.sort(Comparator.comparing(HeimlichAndCoAction::toString));
+        return possibleActions.get(random.nextInt(possibleActions.size()));
+    }
+}
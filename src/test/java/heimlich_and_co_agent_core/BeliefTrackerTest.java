@@ -0,0 +1,60 @@
+package heimlich_and_co_agent_core;
+
+import heimlich_and_co.HeimlichAndCo;
+import heimlich_and_co.actions.HeimlichAndCoAction;
+import heimlich_and_co.enums.Agent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the board BeliefTracker replays from the action records matches the board of the game (including the
+ * scores), and that the beliefs stay distributions, on random games with fixed seeds.
+ */
+class BeliefTrackerTest {
+
+    private static final int NUMBER_OF_GAMES = 40;
+    private static final long SEED = 1;
+
+    @Test
+    void replayedBoardMatchesGameWithoutCards() {
+        assertReplayMatchesGame(false);
+    }
+
+    @Test
+    void replayedBoardMatchesGameWithCards() {
+        assertReplayMatchesGame(true);
+    }
+
+    private static void assertReplayMatchesGame(boolean withCards) {
+        boolean pointsAwarded = false;
+        for (int gameIndex = 0; gameIndex < NUMBER_OF_GAMES; gameIndex++) {
+            Random random = new Random(SEED + gameIndex);
+            int players = 2 + gameIndex % 6;
+            HeimlichAndCo game = new HeimlichAndCo(withCards ? "cards" : null, players);
+            game.setAllowCustomDieRolls(true);
+            BeliefTracker beliefs = new BeliefTracker(0);
+            while (!game.isGameOver()) {
+                List<HeimlichAndCoAction> actions = new ArrayList<>(game.getPossibleActions());
+                game.applyAction(actions.get(random.nextInt(actions.size())));
+                beliefs.update((HeimlichAndCo) game.getGame(0));
+                assertEquals(0, beliefs.getResynchronizations(), "replayed board differs in game " + gameIndex);
+            }
+            for (int player = 1; player < players; player++) {
+                double sum = 0;
+                for (Agent agent : game.getBoard().getAgents()) {
+                    sum += beliefs.getProbability(player, agent);
+                }
+                assertEquals(1, sum, 1e-9, "probabilities of player " + player + " in game " + gameIndex);
+            }
+            pointsAwarded |= game.getBoard().getScores().values().stream().anyMatch(score -> score != 0);
+        }
+        assertTrue(pointsAwarded);
+    }
+}
@@ -0,0 +1,35 @@
+package heimlich_and_co_agent_core;
+
+import heimlich_and_co_tournament.PackedGameStateVerifier;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Differential test of PackedGameState against HeimlichAndCo on random games with fixed seeds (see
+ * PackedGameStateVerifier, which is also used for runs with many more games).
+ */
+class PackedGameStateTest {
+
+    private static final int NUMBER_OF_GAMES = 2000;
+    private static final int GAMES_PER_NUMBER_OF_PLAYERS = 20;
+    private static final long SEED = 1;
+
+    @Test
+    void matchesGameWithRandomNumbersOfPlayers() {
+        long moves = 0;
+        for (int game = 0; game < NUMBER_OF_GAMES; game++) {
+            moves += PackedGameStateVerifier.verifyGame(SEED + game, 0);
+        }
+        assertTrue(moves > NUMBER_OF_GAMES);
+    }
+
+    @Test
+    void matchesGameWithEveryNumberOfPlayers() {
+        for (int players = 2; players <= 7; players++) {
+            for (int game = 0; game < GAMES_PER_NUMBER_OF_PLAYERS; game++) {
+                PackedGameStateVerifier.verifyGame(SEED + game, players);
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package heimlich_and_co_depth_search_agent;
+
+import heimlich_and_co.HeimlichAndCo;
+import heimlich_and_co.actions.HeimlichAndCoDieRollAction;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks the iterative deepening of AlphaBetaSearch together with a transposition table that is kept across moves.
+ */
+class AlphaBetaSearchTest {
+
+    private static final int FIRST_SEARCH_DEPTH = 3;
+    private static final int SECOND_SEARCH_DEPTH = 4;
+
+    /**
+     * The entries of the first search resolve the children of the root in the early iterations of the second search.
+     * As these entries were cut off by the depth limit, the second search must still deepen to its maximum depth
+     * instead of stopping as if the whole game tree was searched.
+     */
+    @Test
+    void deepensPastEntriesOfPreviousSearch() {
+        HeimlichAndCo game = new HeimlichAndCo(null, 2);
+        game.setAllowCustomDieRolls(true);
+        game.applyAction(new HeimlichAndCoDieRollAction(4));
+        game.setAllowCustomDieRolls(false);
+        int player = game.getCurrentPlayer();
+        TranspositionTable transpositionTable = new TranspositionTable(16);
+
+        transpositionTable.newSearch();
+        AlphaBetaSearch firstSearch = new AlphaBetaSearch(player, () -> false, transpositionTable);
+        firstSearch.search(new HeimlichAndCo(game), FIRST_SEARCH_DEPTH);
+        assertEquals(FIRST_SEARCH_DEPTH, firstSearch.getCompletedDepth());
+
+        transpositionTable.newSearch();
+        AlphaBetaSearch secondSearch = new AlphaBetaSearch(player, () -> false, transpositionTable);
+        secondSearch.search(new HeimlichAndCo(game), SECOND_SEARCH_DEPTH);
+        assertEquals(SECOND_SEARCH_DEPTH, secondSearch.getCompletedDepth());
+    }
+}